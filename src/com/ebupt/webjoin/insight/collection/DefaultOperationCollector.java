@@ -35,6 +35,7 @@ import com.ebupt.webjoin.insight.util.StringFormatterUtils;
 public class DefaultOperationCollector implements OperationCollector {
     private InterceptConfiguration interceptConfig = InterceptConfiguration.getInstance();
     public FrameBuilder builder = interceptConfig.getFrameBuilder();
+    private int maxFieldLength = StringFormatterUtils.MAX_FIELD_LENGTH;
 
     public DefaultOperationCollector() {
     	super();
@@ -47,6 +48,21 @@ public class DefaultOperationCollector implements OperationCollector {
     public void setFrameBuilder(FrameBuilder frameBuilder) {
         this.builder = frameBuilder;
     }
+
+    public int getMaxFieldLength() {
+        return maxFieldLength;
+    }
+
+    /**
+     * @param maxLength Max. number of characters kept from a formatted
+     * return value - default={@link StringFormatterUtils#MAX_FIELD_LENGTH}
+     */
+    public void setMaxFieldLength(int maxLength) {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("Bad max. field length: " + maxLength);
+        }
+        this.maxFieldLength = maxLength;
+    }
     
     // Final methods for entering and exiting -- these are too important to rely on subclasses to
     // do it right (instead provide process*() template methods to augment behavior)
@@ -63,7 +79,7 @@ public class DefaultOperationCollector implements OperationCollector {
         Operation op = workingOperation();
         if (op != null) {
         	if(returnValue != Void.TYPE)
-        		op.put(OperationFields.RETURN_VALUE, StringFormatterUtils.formatObject(returnValue));
+        		op.put(OperationFields.RETURN_VALUE, StringFormatterUtils.formatObjectBounded(returnValue, maxFieldLength));
             processNormalExit(op, returnValue);
         }
         return exit();
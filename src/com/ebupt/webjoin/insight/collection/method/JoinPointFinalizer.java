@@ -74,7 +74,7 @@ public class JoinPointFinalizer implements OperationFinalizer {
 			op.sourceCodeLocation(template.getSourceCodeLocation());
 		}
 
-		op.copyPropertiesFrom(template);
+		op.inheritPropertiesFrom(template);
 		stringifyArguments(op, jp.getArgs());
 	}
 
@@ -82,6 +82,7 @@ public class JoinPointFinalizer implements OperationFinalizer {
 	 * If any of the given arguments can be converted to a nicer string
 	 * representation, we make a copy of the operation's argument list and
 	 * modify it with the stringified version of the appropriate arguments.
+	 * The (shared) template list is used as-is if no argument is changed.
 	 * 
 	 * @param op
 	 *            The {@link Operation} to which to add the argument
@@ -96,13 +97,14 @@ public class JoinPointFinalizer implements OperationFinalizer {
 					argList = null;
 		if(orgList == null || orgList.size() == 0) return;
 
-		argList = orgList.shallowCopy();
-		
 		for (int i = 0; i < args.length; i++) {
 			Object argVal = args[i];
 			if (!StringFormatterUtils.isToStringable(argVal)) {
 				continue;
 			}
+			if (argList == null) {
+				argList = orgList.shallowCopy();
+			}
 			argList.update(i, StringFormatterUtils.formatObject(argVal));
 		}
 
@@ -1,7 +1,9 @@
 package com.ebupt.webjoin.insight.collection.method;
 
+import java.lang.ref.WeakReference;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.Signature;
@@ -17,10 +19,53 @@ import com.ebupt.webjoin.insight.intercept.operation.SourceCodeLocation;
 import com.ebupt.webjoin.insight.intercept.operation.method.JoinPointBreakDown;
 import com.ebupt.webjoin.insight.util.StringUtil;
 
+/**
+ * Caches the {@link Operation} templates of advised methods. The templates are
+ * first looked up by the {@link JoinPoint.StaticPart} identity (AspectJ creates a single
+ * static part per shadow) in a direct-mapped table of weak references, so a hit
+ * allocates nothing and does not pin the woven class. On a miss (first call, slot
+ * collision or a dynamically created static part) we fall back to a structural key.
+ */
 public class OperationCache {
+	public static final int DEFAULT_IDENTITY_SLOTS = 4096;
+
 	private Map<OperationTemplateCacheKey, Operation> templateCache = new ConcurrentHashMap<OperationTemplateCacheKey, Operation>();
+	private final AtomicReferenceArray<IdentityEntry> identityCache;
+	private final int identityMask;
+
+	public OperationCache() {
+		this(DEFAULT_IDENTITY_SLOTS);
+	}
+
+	/**
+	 * @param identitySlots Number of identity slots - rounded up to a power of 2
+	 */
+	public OperationCache(int identitySlots) {
+		if (identitySlots <= 0) {
+			throw new IllegalArgumentException("Bad identity slots number: " + identitySlots);
+		}
+
+		int size = Integer.highestOneBit(identitySlots);
+		if (size < identitySlots) {
+			size <<= 1;
+		}
+		this.identityCache = new AtomicReferenceArray<IdentityEntry>(size);
+		this.identityMask = size - 1;
+	}
 
 	public Operation getOperationTemplate(JoinPoint.StaticPart part) {
+		int slot = System.identityHashCode(part) & this.identityMask;
+		IdentityEntry entry = this.identityCache.get(slot);
+		if ((entry != null) && (entry.get() == part)) {
+			return entry.template;
+		}
+
+		Operation template = getOperationTemplateByKey(part);
+		this.identityCache.set(slot, new IdentityEntry(part, template));
+		return template;
+	}
+
+	private Operation getOperationTemplateByKey(JoinPoint.StaticPart part) {
 		OperationTemplateCacheKey key = new OperationTemplateCacheKey(part);
 		Operation template = (Operation) this.templateCache.get(key);
 		if (template != null) {
@@ -64,6 +109,18 @@ public class OperationCache {
 
 	public void clear() {
 		this.templateCache.clear();
+		for (int index = 0; index < this.identityCache.length(); index++) {
+			this.identityCache.set(index, null);
+		}
+	}
+
+	private static final class IdentityEntry extends WeakReference<JoinPoint.StaticPart> {
+		final Operation template;
+
+		IdentityEntry(JoinPoint.StaticPart part, Operation operationTemplate) {
+			super(part);
+			this.template = operationTemplate;
+		}
 	}
 
 	private static class OperationTemplateCacheKey {
@@ -7,6 +7,8 @@ import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingsUpdateListen
 import org.aspectj.lang.JoinPoint;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -26,7 +28,11 @@ public class AspectManagementCollectionStrategy extends CollectionStrategyBase i
             = new CollectionSettingName(STRATEGY_TYPE, STRATEGY_GROUP,
             "Enable/Disable specific plugin aspects using keys of the form: " +
                     new CollectionSettingName("[aspect class simplename]", STRATEGY_KEY).getCollectionSettingsKey());
-    private final ConcurrentHashMap<String, Boolean> knownTargets = new ConcurrentHashMap<String, Boolean>();
+    // settings by aspect simple name - NOTE: updates synchronized on the map itself
+    private final Map<String, Boolean> knownTargets = new HashMap<String, Boolean>();
+    // resolved state per aspect class name - read lock-free on every join point
+    // NOTE: keyed by name so that the aspect classes (and their loaders) are not pinned
+    private final ConcurrentHashMap<String, AspectState> knownAspects = new ConcurrentHashMap<String, AspectState>();
     private final CollectionSettingsRegistry registry;
 
     public AspectManagementCollectionStrategy() {
@@ -101,7 +107,16 @@ public class AspectManagementCollectionStrategy extends CollectionStrategyBase i
     public void incrementalUpdate(CollectionSettingName name, Serializable value) {
         if (name.getName().endsWith(STRATEGY_KEY)
                 && value instanceof Boolean) {
-            knownTargets.put(getAspectClassName(name), (Boolean)value);
+            String  aspectName = getAspectClassName(name);
+            boolean enabled = ((Boolean) value).booleanValue();
+            synchronized (knownTargets) {
+                knownTargets.put(aspectName, (Boolean)value);
+                for (AspectState state : knownAspects.values()) {
+                    if (state.simpleName.equals(aspectName)) {
+                        state.enabled = enabled;
+                    }
+                }
+            }
         }                                        
     }
 
@@ -110,10 +125,40 @@ public class AspectManagementCollectionStrategy extends CollectionStrategyBase i
     }
 
     public boolean collect(CollectionAspectProperties aspect, JoinPoint.StaticPart staticPoint) {
-        Boolean enabled = knownTargets.get(aspect.getClass().getSimpleName());
-        if ((enabled == null) || enabled.booleanValue()) {
-            return true;
+        Class<?>    aspectClass = aspect.getClass();
+        AspectState state = knownAspects.get(aspectClass.getName());
+        if (state == null) {
+            state = registerAspect(aspectClass);
+        }
+        return state.enabled;
+    }
+
+    private AspectState registerAspect(Class<?> aspectClass) {
+        synchronized (knownTargets) {
+            String      className = aspectClass.getName();
+            AspectState state = knownAspects.get(className);
+            if (state == null) {
+                String  simpleName = aspectClass.getSimpleName();
+                Boolean enabled = knownTargets.get(simpleName);
+                state = new AspectState(simpleName, (enabled == null) || enabled.booleanValue());
+                knownAspects.put(className, state);
+            }
+            return state;
+        }
+    }
+
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+
+    private static final class AspectState {
+        final String simpleName;
+        volatile boolean enabled;
+
+        AspectState(String name, boolean enabledValue) {
+            simpleName = name;
+            enabled = enabledValue;
         }
-        return false;
     }
 }
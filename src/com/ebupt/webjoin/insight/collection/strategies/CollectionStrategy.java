@@ -30,6 +30,13 @@ public interface CollectionStrategy extends Comparable<CollectionStrategy> {
      */
     abstract boolean collect(CollectionAspectProperties aspect, JoinPoint.StaticPart staticPoint);
 
+    /**
+     * @return <code>true</code> if the {@link #collect(CollectionAspectProperties, JoinPoint.StaticPart)}
+     * decision depends only on the aspect, the static part and the collection settings - i.e.,
+     * it can be cached until the next settings update
+     */
+    abstract boolean isStatic();
+
     /**
      * The relative order in which this CollectionStrategy should run. Lower
      * numbers mean that the strategy should run earlier.
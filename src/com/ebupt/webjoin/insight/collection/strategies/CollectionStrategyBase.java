@@ -12,6 +12,8 @@ public abstract class CollectionStrategyBase implements CollectionStrategy {
 
     public int order() { return RUN_LAST;}
 
+    public boolean isStatic() { return false; }
+
     public int compareTo(CollectionStrategy o) {
         return order() - o.order();
     }
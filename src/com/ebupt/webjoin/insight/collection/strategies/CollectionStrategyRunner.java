@@ -6,6 +6,7 @@
 package com.ebupt.webjoin.insight.collection.strategies;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -13,6 +14,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 
 import org.aspectj.lang.JoinPoint;
@@ -31,6 +34,22 @@ public class CollectionStrategyRunner implements
 	private final ConcurrentHashMap<CollectionSettingName, CollectionStrategy> allStrategies = 
 			new ConcurrentHashMap<CollectionSettingName, CollectionStrategy>();
 	private volatile CollectionStrategy[] execStrategies = new CollectionStrategy[0];
+	private volatile CollectionStrategy[] staticStrategies = new CollectionStrategy[0];
+	private volatile CollectionStrategy[] dynamicStrategies = new CollectionStrategy[0];
+	/*
+	 * Caches the combined result of the static strategies per (aspect, static part).
+	 * The decisions are kept in a direct-mapped table of weak references to the
+	 * static parts (AspectJ creates a single static part per shadow) - same as the
+	 * OperationCache - so neither the woven classes nor the aspects are pinned and
+	 * the table does not grow. Entries are invalidated by bumping the generation
+	 * whenever a setting is updated (we are registered as a listener after the
+	 * strategies, so they are already up-to-date when the generation changes)
+	 */
+	private static final int DECISION_SLOTS = 4096;
+	private final AtomicReferenceArray<StaticDecisions> staticDecisions =
+			new AtomicReferenceArray<StaticDecisions>(DECISION_SLOTS);
+	private static final int DECISIONS_MASK = DECISION_SLOTS - 1;
+	private final AtomicInteger generation = new AtomicInteger();
 	private final CollectionSettingsRegistry registry;
 	private static final CollectionStrategyRunner INSTANCE = new CollectionStrategyRunner();
 
@@ -99,7 +118,20 @@ public class CollectionStrategyRunner implements
 				strategies);
 		Collections.sort(list);
 
-		execStrategies = list.toArray(new CollectionStrategy[0]);
+		List<CollectionStrategy> staticList = new ArrayList<CollectionStrategy>(list.size());
+		List<CollectionStrategy> dynamicList = new ArrayList<CollectionStrategy>(list.size());
+		for (CollectionStrategy s : list) {
+			if (s.isStatic()) {
+				staticList.add(s);
+			} else {
+				dynamicList.add(s);
+			}
+		}
+
+		staticStrategies = staticList.toArray(new CollectionStrategy[staticList.size()]);
+		dynamicStrategies = dynamicList.toArray(new CollectionStrategy[dynamicList.size()]);
+		execStrategies = list.toArray(new CollectionStrategy[list.size()]);
+		invalidateDecisions();
 	}
 
 	private synchronized void disable(CollectionStrategy collectionStrategy) {
@@ -120,7 +152,11 @@ public class CollectionStrategyRunner implements
 
 	public boolean collect(CollectionAspectProperties aspect,
 			JoinPoint.StaticPart target) {
-		for (CollectionStrategy s : execStrategies) {
+		if (!collectStatic(aspect, target)) {
+			return false;
+		}
+
+		for (CollectionStrategy s : dynamicStrategies) {
 			if (!s.collect(aspect, target)) {
 				return false;
 			}
@@ -128,7 +164,58 @@ public class CollectionStrategyRunner implements
 		return true;
 	}
 
+	boolean collectStatic(CollectionAspectProperties aspect,
+			JoinPoint.StaticPart target) {
+		int gen = generation.get();
+		int slot = System.identityHashCode(target) & DECISIONS_MASK;
+		StaticDecisions entry = staticDecisions.get(slot);
+		StaticDecision head = null;
+		if ((entry != null) && (entry.get() == target) && (entry.generation == gen)) {
+			head = entry.head;
+			for (StaticDecision d = head; d != null; d = d.next) {
+				if (d.get() == aspect) {
+					return d.collect;
+				}
+			}
+		}
+
+		boolean result = true;
+		for (CollectionStrategy s : staticStrategies) {
+			if (!s.collect(aspect, target)) {
+				result = false;
+				break;
+			}
+		}
+
+		// NOTE: racing threads (or colliding static parts) may lose each other's entries - they will just be re-calculated
+		staticDecisions.set(slot, new StaticDecisions(target, gen, new StaticDecision(aspect, result, purge(head))));
+		return result;
+	}
+
+	// drops the decisions of aspects that were garbage collected
+	private static StaticDecision purge(StaticDecision head) {
+		if (head == null) {
+			return null;
+		}
+
+		StaticDecision next = purge(head.next);
+		CollectionAspectProperties aspect = head.get();
+		if (aspect == null) {
+			return next;
+		} else if (next == head.next) {
+			return head;
+		} else {
+			return new StaticDecision(aspect, head.collect, next);
+		}
+	}
+
+	void invalidateDecisions() {
+		// stale entries are ignored due to their generation and replaced on next access
+		generation.incrementAndGet();
+	}
+
 	public void incrementalUpdate(CollectionSettingName name, Serializable value) {
+		invalidateDecisions();
 		for (CollectionSettingName s : allStrategies.keySet()) {
 			if (s.equals(name)) {
 				if (((Boolean) value).booleanValue()) {
@@ -139,4 +226,26 @@ public class CollectionStrategyRunner implements
 			}
 		}
 	}
+
+	private static final class StaticDecisions extends WeakReference<JoinPoint.StaticPart> {
+		final int generation;
+		final StaticDecision head;
+
+		StaticDecisions(JoinPoint.StaticPart target, int gen, StaticDecision decisions) {
+			super(target);
+			generation = gen;
+			head = decisions;
+		}
+	}
+
+	private static final class StaticDecision extends WeakReference<CollectionAspectProperties> {
+		final boolean collect;
+		final StaticDecision next;
+
+		StaticDecision(CollectionAspectProperties aspectInstance, boolean collectValue, StaticDecision nextDecision) {
+			super(aspectInstance);
+			collect = collectValue;
+			next = nextDecision;
+		}
+	}
 }
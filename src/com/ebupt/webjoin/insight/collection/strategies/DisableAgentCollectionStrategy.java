@@ -37,6 +37,11 @@ public class DisableAgentCollectionStrategy extends CollectionStrategyBase imple
         return enabled;
     }
 
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+
     @Override
     public int order() {
         return RUN_FIRST;
@@ -95,6 +95,11 @@ public class DisablePluginCollectionStrategy  extends CollectionStrategyBase imp
         knownPluginFiles.put(pluginName, Boolean.valueOf(disabled));
     }
     
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+
     @Override
     public int order() { 
         return RUN_FIRST;
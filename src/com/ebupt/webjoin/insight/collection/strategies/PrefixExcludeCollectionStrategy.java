@@ -1,6 +1,8 @@
 package com.ebupt.webjoin.insight.collection.strategies;
 
 import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.aspectj.lang.JoinPoint;
@@ -13,7 +15,8 @@ import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingsUpdateListen
 
 /**
  * Collection Strategy which allows for arbitrarily disabling the collection of frames
- * based upon the matching code being instrumented.
+ * based upon the matching code being instrumented. The configured prefixes are
+ * compiled into a {@link PrefixMatcher} and the longest matching prefix wins.
  */
 public class PrefixExcludeCollectionStrategy extends CollectionStrategyBase implements CollectionSettingsUpdateListener {
     private static final String STRATEGY_TYPE = "instrument";
@@ -26,7 +29,11 @@ public class PrefixExcludeCollectionStrategy extends CollectionStrategyBase impl
                     "The list of prefixes can be configured with keys of the form " +
                     new CollectionSettingName(STRATEGY_KEY + "[class].[method]", "[insight plugin name]").getCollectionSettingsKey() +
     " - Only methods which are targeted by plugins are recognized");
-    private final ConcurrentHashMap<String, Boolean> knownTargets = new ConcurrentHashMap<String, Boolean>();
+    // NOTE: keyed by the class name so that the woven classes (and their loaders) are not pinned
+    private final ConcurrentHashMap<String, TargetClass> knownTargets = new ConcurrentHashMap<String, TargetClass>();
+    // NOTE: access synchronized on the map itself - updates are rare, matching uses the compiled snapshot
+    private final Map<String, Boolean> prefixes = new TreeMap<String, Boolean>();
+    private volatile PrefixMatcher matcher = PrefixMatcher.EMPTY;
     private final CollectionSettingsRegistry registry;
 
 
@@ -37,11 +44,21 @@ public class PrefixExcludeCollectionStrategy extends CollectionStrategyBase impl
         registry = reg;
         registry.register(PREFIX_EXCLUDE_COLLECTION_STRATEGY, Boolean.TRUE);
         registry.addListener(this);
+
+        // pick up any prefixes configured before we started listening
+        for (Map.Entry<CollectionSettingName, Serializable> se : registry.getCollectionSettings().entrySet()) {
+            incrementalUpdate(se.getKey(), se.getValue());
+        }
     }
 
     public static CollectionSettingName getMethodSettingName(Class<?> clazz, String plugin, String method) {
         
-         return new CollectionSettingName(METHOD_KEY_PREFIX + clazz.getCanonicalName() + "." + method, plugin, "Enable/Disable this method from being instrumented");
+         return new CollectionSettingName(METHOD_KEY_PREFIX + getTargetClassName(clazz) + "." + method, plugin, "Enable/Disable this method from being instrumented");
+    }
+
+    static String getTargetClassName(Class<?> clazz) {
+        String name = clazz.getCanonicalName();
+        return (name == null) ? clazz.getName() : name;   // anonymous/local classes have no canonical name
     }
 
     public CollectionSettingName getStrategyName() {
@@ -56,16 +73,36 @@ public class PrefixExcludeCollectionStrategy extends CollectionStrategyBase impl
         Signature sig =  target.getSignature();
         Class<?> clazz = sig.getDeclaringType();
         String methodName = sig.getName();
-        String classMethod = clazz.getCanonicalName() + "." + methodName;
-        Boolean keepFullMethod = knownTargets.get(classMethod);
-        if (keepFullMethod == null) {
+        String className = clazz.getName();
+        TargetClass targetClass = knownTargets.get(className);
+        if (targetClass == null) {
+            targetClass = new TargetClass(getTargetClassName(clazz));
+            TargetClass prev = knownTargets.putIfAbsent(className, targetClass);
+            if (prev != null) {
+                targetClass = prev;
+            }
+        }
+
+        // NOTE: check first since putIfAbsent always locks - registration is a one-time event per method
+        if ((!targetClass.methods.containsKey(methodName))
+         && (targetClass.methods.putIfAbsent(methodName, Boolean.TRUE) == null)) {
             String pluginName = aspect.getPluginName();
             if (pluginName == null) pluginName = "unknown";
-            knownTargets.put(classMethod, Boolean.TRUE);
-            registry.register(getMethodSettingName(clazz, pluginName,  methodName), Boolean.TRUE);
-            return true;
+            // expose the method with its current effective value
+            registry.register(getMethodSettingName(clazz, pluginName,  methodName), Boolean.valueOf(isIncluded(targetClass.name, methodName)));
         }
-        return keepFullMethod.booleanValue();
+
+        return isIncluded(targetClass.name, methodName);
+    }
+
+    boolean isIncluded(String className, String methodName) {
+        Boolean keepFullMethod = matcher.match(className, methodName);
+        return (keepFullMethod == null) || keepFullMethod.booleanValue();
+    }
+
+    @Override
+    public boolean isStatic() {
+        return true;
     }
 
     public void incrementalUpdate(CollectionSettingName name, Serializable value) {
@@ -80,13 +117,33 @@ public class PrefixExcludeCollectionStrategy extends CollectionStrategyBase impl
         Boolean enabled = (Boolean) value;
         key = key.replaceFirst(".*" + METHOD_KEY_PREFIX, "");
         if (key.length() <= 0) { return; }
-        // Run through all the classMethods we have seen thus far... if any of them
-        // start with the specified key update the setting
-        for (String target : knownTargets.keySet()) {
-            if (target.startsWith(key)) {
-                knownTargets.put(target, enabled);
+
+        synchronized (prefixes) {
+            // avoid growing the matcher with values that do not change any decision - e.g., the registration of new targets
+            if ((!prefixes.containsKey(key)) && enabled.equals(Boolean.valueOf(isIncluded(key)))) {
+                return;
             }
+
+            if (enabled.equals(prefixes.put(key, enabled))) {
+                return;
+            }
+
+            matcher = PrefixMatcher.compile(prefixes);
         }
+    }
+
+    private boolean isIncluded(String prefix) {
+        Boolean keep = matcher.match(prefix);
+        return (keep == null) || keep.booleanValue();
+    }
 
+    private static final class TargetClass {
+        final String name;
+        // used as a concurrent set of the methods that were already registered
+        final ConcurrentHashMap<String, Boolean> methods = new ConcurrentHashMap<String, Boolean>();
+
+        TargetClass(String className) {
+            name = className;
+        }
     }
 }
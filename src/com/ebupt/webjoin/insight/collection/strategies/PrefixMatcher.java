@@ -0,0 +1,149 @@
+package com.ebupt.webjoin.insight.collection.strategies;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable character trie of configured prefixes, each mapped to a
+ * {@link Boolean} value. Matches the <U>longest</U> configured prefix
+ * of a <code>class.method</code> target without building the target string.
+ */
+final class PrefixMatcher {
+    static final PrefixMatcher EMPTY = new PrefixMatcher(new Node(null, new char[0], new Node[0]));
+
+    private final Node root;
+
+    private PrefixMatcher(Node rootNode) {
+        root = rootNode;
+    }
+
+    /**
+     * @param prefixes The prefixes and their associated values
+     * @return A compiled matcher for them
+     */
+    static PrefixMatcher compile(Map<String, Boolean> prefixes) {
+        if ((prefixes == null) || prefixes.isEmpty()) {
+            return EMPTY;
+        }
+
+        NodeBuilder rootBuilder = new NodeBuilder();
+        for (Map.Entry<String, Boolean> pe : prefixes.entrySet()) {
+            String prefix = pe.getKey();
+            NodeBuilder node = rootBuilder;
+            for (int index = 0; index < prefix.length(); index++) {
+                node = node.child(prefix.charAt(index));
+            }
+            node.value = pe.getValue();
+        }
+
+        return new PrefixMatcher(rootBuilder.build());
+    }
+
+    /**
+     * @param target The target string
+     * @return The value of the longest prefix of the target (<code>null</code>
+     * if no prefix matches)
+     */
+    Boolean match(String target) {
+        Node node = root;
+        Boolean result = node.value;
+
+        for (int index = 0; index < target.length(); index++) {
+            if ((node = node.child(target.charAt(index))) == null) {
+                return result;
+            }
+            if (node.value != null) {
+                result = node.value;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param className The class name
+     * @param methodName The method name
+     * @return The value of the longest prefix of <code>className + "." + methodName</code>
+     * (<code>null</code> if no prefix matches)
+     */
+    Boolean match(String className, String methodName) {
+        Node node = root;
+        Boolean result = node.value;
+
+        for (int index = 0; index < className.length(); index++) {
+            if ((node = node.child(className.charAt(index))) == null) {
+                return result;
+            }
+            if (node.value != null) {
+                result = node.value;
+            }
+        }
+
+        if ((node = node.child('.')) == null) {
+            return result;
+        }
+        if (node.value != null) {
+            result = node.value;
+        }
+
+        for (int index = 0; index < methodName.length(); index++) {
+            if ((node = node.child(methodName.charAt(index))) == null) {
+                return result;
+            }
+            if (node.value != null) {
+                result = node.value;
+            }
+        }
+
+        return result;
+    }
+
+    private static final class Node {
+        final Boolean value;
+        final char[] keys;  // sorted
+        final Node[] children;
+
+        Node(Boolean nodeValue, char[] childKeys, Node[] childNodes) {
+            value = nodeValue;
+            keys = childKeys;
+            children = childNodes;
+        }
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return (index < 0) ? null : children[index];
+        }
+    }
+
+    private static final class NodeBuilder {
+        Boolean value;
+        final Map<Character, NodeBuilder> children = new TreeMap<Character, NodeBuilder>();
+
+        NodeBuilder() {
+            super();
+        }
+
+        NodeBuilder child(char c) {
+            Character key = Character.valueOf(c);
+            NodeBuilder node = children.get(key);
+            if (node == null) {
+                node = new NodeBuilder();
+                children.put(key, node);
+            }
+            return node;
+        }
+
+        Node build() {
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[keys.length];
+            int index = 0;
+            for (Map.Entry<Character, NodeBuilder> ce : children.entrySet()) {
+                keys[index] = ce.getKey().charValue();
+                nodes[index] = ce.getValue().build();
+                index++;
+            }
+            return new Node(value, keys, nodes);
+        }
+    }
+}
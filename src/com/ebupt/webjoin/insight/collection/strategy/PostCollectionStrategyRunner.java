@@ -31,8 +31,7 @@ public class PostCollectionStrategyRunner {
         this(new FrameTimeRangeStrategy());
     }
     
-    //default visibility for testing
-    PostCollectionStrategyRunner(PostCollectionStrategy... strats) {
+    public PostCollectionStrategyRunner(PostCollectionStrategy... strats) {
         this.strategies.addAll(Arrays.asList(strats));
     }
     
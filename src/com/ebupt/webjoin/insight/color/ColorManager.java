@@ -15,6 +15,7 @@ import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingName;
 import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingsRegistry;
 import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingsUpdateListener;
 import com.ebupt.webjoin.insight.intercept.trace.FrameBuilder;
+import com.ebupt.webjoin.insight.intercept.util.AdaptiveRateTracker;
 import com.ebupt.webjoin.insight.intercept.util.PercentageTracker;
 import com.ebupt.webjoin.insight.util.ArrayUtil;
 import com.ebupt.webjoin.insight.util.ListUtil;
@@ -36,6 +37,18 @@ public final class ColorManager implements CollectionSettingsUpdateListener {
     
     public static final CollectionSettingName CS_NAME =
             new CollectionSettingName("sampling-percentage", "cross-server-tracing");
+
+    /**
+     * Default traces per second target: 0 - i.e., use the sampling percentage
+     */
+    public static final int DEFAULT_TRACES_PER_SECOND = 0;
+
+    /**
+     * If positive, then new colors are generated at (approx.) this rate per
+     * second regardless of the load, instead of using the sampling percentage
+     */
+    public static final CollectionSettingName TRACES_PER_SECOND_NAME =
+            new CollectionSettingName("sampling-traces-per-second", "cross-server-tracing");
     
     private static final InterceptConfiguration interceptConfig = InterceptConfiguration.getInstance();
     private static final CollectionSettingsRegistry registry = CollectionSettingsRegistry.getInstance();
@@ -43,6 +56,7 @@ public final class ColorManager implements CollectionSettingsUpdateListener {
     private final String agentId;
     private final AtomicLong colorId;
     private final PercentageTracker tracker;
+    private final AdaptiveRateTracker rateTracker;
     
     ColorManager() {
         this(interceptConfig.getServer().makeKey().getKey());
@@ -55,6 +69,7 @@ public final class ColorManager implements CollectionSettingsUpdateListener {
         
         int registeredValue = getRegisteredTracingRate();
         this.tracker = new PercentageTracker("color-manager-tracker", registeredValue);
+        this.rateTracker = new AdaptiveRateTracker("color-manager-rate-tracker", getRegisteredTracesPerSecond());
         
         registry.addListener(this);
     }
@@ -75,6 +90,23 @@ public final class ColorManager implements CollectionSettingsUpdateListener {
         registry.register(CS_NAME, Integer.valueOf(DEFAULT_TRACING_RATE));
         return DEFAULT_TRACING_RATE;
     }
+
+    public static int getRegisteredTracesPerSecond() {
+        Serializable value = registry.get(TRACES_PER_SECOND_NAME);
+        
+        if (value != null) {
+            try {
+                return CollectionSettingsRegistry.getIntegerSettingValue(value);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Invalid traces per second (" + value + ") found in registry. Registering a new value " +
+                		" (" + DEFAULT_TRACES_PER_SECOND + ") instead", e);
+                
+            }
+        }
+        
+        registry.register(TRACES_PER_SECOND_NAME, Integer.valueOf(DEFAULT_TRACES_PER_SECOND));
+        return DEFAULT_TRACES_PER_SECOND;
+    }
     
     public static final ColorManager getInstance() {
         return LazyFieldHolder.INSTANCE;
@@ -84,6 +116,9 @@ public final class ColorManager implements CollectionSettingsUpdateListener {
         if (CS_NAME.equals(name) && value != null) {
             this.tracker.setTrackedRatio(CollectionSettingsRegistry.getIntegerSettingValue(value));
             this.tracker.reset();
+        } else if (TRACES_PER_SECOND_NAME.equals(name) && value != null) {
+            this.rateTracker.setTargetRate(CollectionSettingsRegistry.getIntegerSettingValue(value));
+            this.rateTracker.reset();
         }
     }
 
@@ -170,13 +205,20 @@ public final class ColorManager implements CollectionSettingsUpdateListener {
      */
     /* visibility for unit testing */ 
     Color generateNewColorIfNeeded(Color color) {
-        if ((color == null) && tracker.isValueProcessingAllowed()) {
+        if ((color == null) && isSamplingAllowed()) {
             return new Color(null, null, agentId, createNewSourceId());
         }
         
         return color;
     }
 
+    private boolean isSamplingAllowed() {
+        if (rateTracker.getTargetRate() > 0) {
+            return rateTracker.isValueProcessingAllowed();
+        }
+        return tracker.isValueProcessingAllowed();
+    }
+
     @SuppressWarnings("unchecked")
     public List<Color> getColor(Map<String, Object> hints) {
         return (List<Color>) hints.get(Color.TOKEN_NAME);
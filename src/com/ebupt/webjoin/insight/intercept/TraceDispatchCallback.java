@@ -22,6 +22,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +50,7 @@ import com.ebupt.webjoin.insight.intercept.trace.ObscuredValueRegistry;
 import com.ebupt.webjoin.insight.intercept.trace.SimpleFrame;
 import com.ebupt.webjoin.insight.intercept.trace.StopWatchFrame;
 import com.ebupt.webjoin.insight.intercept.trace.Trace;
+import com.ebupt.webjoin.insight.intercept.trace.TraceAnalyzersRegistry;
 import com.ebupt.webjoin.insight.intercept.trace.TraceId;
 import com.ebupt.webjoin.insight.intercept.trace.TraceType;
 import com.ebupt.webjoin.insight.intercept.util.time.TimeRange;
@@ -87,7 +92,19 @@ public class TraceDispatchCallback extends NullFrameBuilderCallback {
 	 */
 	public static final String ELABORATE_UNKNOWN_LABEL="Unknown application call stack data";
 
+	public static final int	DEFAULT_MAX_UNKNOWN_APP_STACKS=10;
+	/**
+	 * Max. number of call stacks captured per minute for each root frame
+	 * {@link OperationType} of unknown applications - beyond it the synthetic
+	 * frame contains only the class loader information
+	 */
+	public static final int	MAX_UNKNOWN_APP_STACKS=
+			Integer.parseInt(System.getProperty("insight.unknown.app.stacks.per.minute", String.valueOf(DEFAULT_MAX_UNKNOWN_APP_STACKS)));
+
     private final InterceptConfiguration intercept;
+    private final AtomicLong unknownAppTraces=new AtomicLong(0L);
+    private final ConcurrentMap<OperationType, StackCaptureWindow> stackCaptures=new ConcurrentHashMap<OperationType, StackCaptureWindow>();
+    private int maxUnknownAppStacks=MAX_UNKNOWN_APP_STACKS;
 
     public TraceDispatchCallback(InterceptConfiguration interceptConfig) {
         this.intercept = interceptConfig;
@@ -100,6 +117,7 @@ public class TraceDispatchCallback extends NullFrameBuilderCallback {
         
         ApplicationName	appName=getAppName(hints);
         if (ApplicationName.UNKOWN_APPLICATION.equals(appName)) {
+        	unknownAppTraces.incrementAndGet();
         	handleUnknownApplication(rootFrame, hints);
         }
 
@@ -117,10 +135,22 @@ public class TraceDispatchCallback extends NullFrameBuilderCallback {
 //        }
 
         trace.setSensitiveValues(getSensitiveValues(hints));
+        // NOTE: must be done before dispatching since the listeners may render the trace
+        analyzeTrace(trace);
 
         intercept.dispatchTrace(trace);
     }
 
+    /**
+     * Called by {@link TraceDispatchCallback#exitRootFrame(Frame, Map)} in order
+     * to run the plugins {@link com.ebupt.webjoin.insight.intercept.trace.TraceAnalyzer}-s
+     * on the finished trace
+     * @param trace The {@link Trace} about to be dispatched
+     */
+    protected void analyzeTrace (Trace trace) {
+        TraceAnalyzersRegistry.getInstance().analyzeTrace(trace);
+    }
+
     /**
      * Called by {@link TraceDispatchCallback#exitRootFrame(Frame, Map)} when
      * an associated {@link ApplicationName#UNKOWN_APPLICATION} is detected.
@@ -151,10 +181,16 @@ public class TraceDispatchCallback extends NullFrameBuilderCallback {
 		}
 
     	ClassLoader				cl=ClassUtil.getDefaultClassLoader(getClass());
-    	List<StackTraceElement>	stackTrace=findOriginalCallLocation(new Throwable().fillInStackTrace().getStackTrace());
+    	boolean					captureStack=isStackCaptureAllowed(rootFrame.getOperation().getType());
+    	List<StackTraceElement>	stackTrace=captureStack
+    			? findOriginalCallLocation(new Throwable().fillInStackTrace().getStackTrace())
+    			: Collections.<StackTraceElement>emptyList()
+    			;
     	Operation				op=new Operation().type(ELABORATE_UNKNOWN_APPOP).label(ELABORATE_UNKNOWN_LABEL);
 
-    	LOG.warning("handleUnknownApplication(class-loader): " + cl);
+    	if (captureStack) {
+    		LOG.warning("handleUnknownApplication(class-loader): " + cl);
+    	}
     	if (ListUtil.size(stackTrace) > 0) {
     		StackTraceElement	root=stackTrace.get(0);
     		op.sourceCodeLocation(new SourceCodeLocation(root));
@@ -175,6 +211,41 @@ public class TraceDispatchCallback extends NullFrameBuilderCallback {
     	return extraFrame;
     }
 
+    /**
+     * @return Number of root frames dispatched so far without a known application
+     */
+    public long getUnknownApplicationTraces () {
+    	return unknownAppTraces.get();
+    }
+
+    public int getMaxUnknownApplicationStacks () {
+    	return maxUnknownAppStacks;
+    }
+
+    /**
+     * @param maxStacks Max. call stacks captured per minute for each root
+     * frame type. Defaults to {@link #MAX_UNKNOWN_APP_STACKS}
+     */
+    public void setMaxUnknownApplicationStacks (int maxStacks) {
+    	if (maxStacks < 0) {
+    		throw new IllegalArgumentException("Negative max. stacks: " + maxStacks);
+    	}
+    	maxUnknownAppStacks = maxStacks;
+    }
+
+    protected boolean isStackCaptureAllowed (OperationType type) {
+    	StackCaptureWindow	window=stackCaptures.get(type);
+    	if (window == null) {
+    		window = new StackCaptureWindow();
+    		StackCaptureWindow	prev=stackCaptures.putIfAbsent(type, window);
+    		if (prev != null) {
+    			window = prev;
+    		}
+    	}
+
+    	return window.tryAcquire(System.currentTimeMillis(), maxUnknownAppStacks);
+    }
+
     protected TimeRange createExtraFrameTimeRange (Frame rootFrame) {
     	TimeRange	rootRange=rootFrame.getRange();
     	long		rootStart=rootRange.getStart();
@@ -282,4 +353,28 @@ public class TraceDispatchCallback extends NullFrameBuilderCallback {
         return Arrays.asList(FrameBuilderEvent.ROOT_EXIT);
     }
 
+    private static final class StackCaptureWindow {
+    	private static final long	WINDOW_MILLIS=TimeUnit.MINUTES.toMillis(1L);
+    	private long	windowStart;
+    	private int		captured;
+
+    	StackCaptureWindow() {
+    		super();
+    	}
+
+    	synchronized boolean tryAcquire (long now, int maxCaptures) {
+    		if ((now - windowStart) >= WINDOW_MILLIS) {
+    			windowStart = now;
+    			captured = 0;
+    		}
+
+    		if (captured >= maxCaptures) {
+    			return false;
+    		}
+
+    		captured++;
+    		return true;
+    	}
+    }
+
 }
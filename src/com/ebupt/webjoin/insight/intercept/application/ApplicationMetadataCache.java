@@ -1,87 +1,80 @@
 package com.ebupt.webjoin.insight.intercept.application;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.ebupt.webjoin.insight.application.ApplicationName;
 
 public class ApplicationMetadataCache {
 	private static final ApplicationMetadataCache instance = new ApplicationMetadataCache();
-	private Map<ApplicationName, ApplicationMetadata> cache;
+	private final ConcurrentMap<ApplicationName, ApplicationMetadata> cache;
 
-	private ApplicationMetadataCache() {
-		this.cache = new HashMap<ApplicationName, ApplicationMetadata>();
+	// package protected for testing
+	ApplicationMetadataCache() {
+		this.cache = new ConcurrentHashMap<ApplicationName, ApplicationMetadata>();
 	}
 
 	public static ApplicationMetadataCache getInstance() {
 		return instance;
 	}
 
+	public int size() {
+		return this.cache.size();
+	}
+
 	public void clear() {
-		synchronized (this.cache) {
-			for (ApplicationName name : this.cache.keySet())
-				this.cache.remove(name);
-		}
+		this.cache.clear();
 	}
 
 	public String getLabel(ApplicationName name) {
-		synchronized (this.cache) {
-			ApplicationMetadata metadata = (ApplicationMetadata) this.cache
-					.get(name);
-			if (metadata != null) {
-				String label = metadata.getLabel();
-				if (label != null) {
-					return label;
-				}
+		ApplicationMetadata metadata = this.cache.get(name);
+		if (metadata != null) {
+			String label = metadata.getLabel();
+			if (label != null) {
+				return label;
 			}
-
-			return name.getFormatted();
 		}
+
+		return name.getFormatted();
 	}
 
 	public void setLabel(ApplicationName name, String label) {
-		synchronized (this.cache) {
-			ApplicationMetadata metadata = (ApplicationMetadata) this.cache
-					.get(name);
-			if (metadata == null) {
-				metadata = new ApplicationMetadata();
-				this.cache.put(name, metadata);
-			}
-			metadata.setLabel(label);
-		}
+		getMetadata(name).setLabel(label);
 	}
 
 	public ApplicationName getApplicationName(ApplicationName name) {
-		synchronized (this.cache) {
-			ApplicationMetadata metadata = (ApplicationMetadata) this.cache
-					.get(name);
-			if (metadata != null) {
-				ApplicationName nameOverride = metadata.getApplicationName();
-				if (nameOverride != null) {
-					return nameOverride;
-				}
+		ApplicationMetadata metadata = this.cache.get(name);
+		if (metadata != null) {
+			ApplicationName nameOverride = metadata.getApplicationName();
+			if (nameOverride != null) {
+				return nameOverride;
 			}
-
-			return name;
 		}
+
+		return name;
 	}
 
 	public void setApplicationName(ApplicationName name,
 			ApplicationName nameOverride) {
-		synchronized (this.cache) {
-			ApplicationMetadata metadata = (ApplicationMetadata) this.cache
-					.get(name);
+		getMetadata(name).setApplicationName(nameOverride);
+	}
+
+	// the first thread to add metadata for a name wins - others use its instance
+	private ApplicationMetadata getMetadata(ApplicationName name) {
+		ApplicationMetadata metadata = this.cache.get(name);
+		if (metadata == null) {
+			ApplicationMetadata newMetadata = new ApplicationMetadata();
+			metadata = this.cache.putIfAbsent(name, newMetadata);
 			if (metadata == null) {
-				metadata = new ApplicationMetadata();
-				this.cache.put(name, metadata);
+				metadata = newMetadata;
 			}
-			metadata.setApplicationName(nameOverride);
 		}
+		return metadata;
 	}
 
-	private class ApplicationMetadata {
-		private String label;
-		private ApplicationName name;
+	private static class ApplicationMetadata {
+		private volatile String label;
+		private volatile ApplicationName name;
 
 		private ApplicationMetadata() {
 		}
@@ -0,0 +1,98 @@
+package com.ebupt.webjoin.insight.intercept.application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.ebupt.webjoin.insight.application.ApplicationName;
+
+import junit.framework.TestCase;
+
+public class ApplicationMetadataCacheTest extends TestCase {
+	private static final int NUM_THREADS = 32;
+	private static final int NUM_APPS = 16;
+	private static final int NUM_ITERATIONS = 20000;
+
+	ApplicationMetadataCache cache = new ApplicationMetadataCache();
+
+	public void testDefaultsForUnknownApplication() {
+		ApplicationName app = ApplicationName.valueOf("localhost", "unknown-app");
+		assertEquals(app.getFormatted(), cache.getLabel(app));
+		assertSame(app, cache.getApplicationName(app));
+		assertEquals(0, cache.size());
+	}
+
+	public void testLabelAndNameShareMetadata() {
+		ApplicationName app = ApplicationName.valueOf("localhost", "app");
+		ApplicationName override = ApplicationName.valueOf("localhost", "override");
+		cache.setLabel(app, "My Application");
+		cache.setApplicationName(app, override);
+
+		assertEquals(1, cache.size());
+		assertEquals("My Application", cache.getLabel(app));
+		assertSame(override, cache.getApplicationName(app));
+	}
+
+	public void testClearRemovesAllEntries() {
+		for (int i = 0; i < NUM_APPS; i++) {
+			cache.setLabel(ApplicationName.valueOf("localhost", "app" + i), "label" + i);
+		}
+		assertEquals(NUM_APPS, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	public void testConcurrentAccess() throws Exception {
+		final ApplicationName[] apps = new ApplicationName[NUM_APPS];
+		for (int i = 0; i < apps.length; i++) {
+			apps[i] = ApplicationName.valueOf("localhost", "app" + i);
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(NUM_THREADS);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		for (int t = 0; t < NUM_THREADS; t++) {
+			final int threadIndex = t;
+			Thread thread = new Thread("cache-" + t) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < NUM_ITERATIONS; i++) {
+							ApplicationName app = apps[(threadIndex + i) % apps.length];
+							if ((i % 7) == 0) {
+								cache.setLabel(app, app.getName());
+							} else if ((threadIndex == 0) && ((i % 1000) == 0)) {
+								cache.clear();
+							} else {
+								String label = cache.getLabel(app);
+								if (!(label.equals(app.getName()) || label.equals(app.getFormatted()))) {
+									throw new IllegalStateException("Unexpected label for " + app + ": " + label);
+								}
+							}
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+			thread.start();
+		}
+
+		start.countDown();
+		assertTrue("Threads did not finish", done.await(60L, TimeUnit.SECONDS));
+		assertTrue("Errors: " + errors, errors.isEmpty());
+
+		// every application has been labeled after the last clear
+		for (ApplicationName app : apps) {
+			cache.setLabel(app, app.getName());
+			assertEquals(app.getName(), cache.getLabel(app));
+		}
+		assertEquals(NUM_APPS, cache.size());
+	}
+}
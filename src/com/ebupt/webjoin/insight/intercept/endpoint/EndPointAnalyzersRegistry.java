@@ -17,10 +17,12 @@
 package com.ebupt.webjoin.insight.intercept.endpoint;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 import com.ebupt.webjoin.insight.application.ApplicationName;
 import com.ebupt.webjoin.insight.intercept.InterceptConfiguration;
@@ -42,13 +44,18 @@ public class EndPointAnalyzersRegistry {
     public static final String SERVER_TOKEN_NAME = "X-insight-server-name";
     
     private static final EndPointAnalyzersRegistry INSTANCE = new EndPointAnalyzersRegistry();
-    private final Map<OperationType, List<EndPointAnalyzer>> map;
+    private static final Map<OperationType, EndPointAnalyzer[]> EMPTY_ANALYZERS = Collections.emptyMap();
+    /*
+     * Immutable snapshot that is replaced (under the defaultAnalyzer lock)
+     * whenever an analyzer is registered, so that looking up the analyzers
+     * on each frame exit requires no locking
+     */
+    private volatile Map<OperationType, EndPointAnalyzer[]> map = EMPTY_ANALYZERS;
     private final EndPointAnalyzer defaultAnalyzer;
     
     private volatile boolean allRegistered;
     
     private EndPointAnalyzersRegistry() {
-        this.map = new TreeMap<OperationType, List<EndPointAnalyzer>>(OperationType.BY_NAME_COMPARATOR);
         this.defaultAnalyzer = DefaultEndPointAnalyzer.getInstance();
         registerAnalyzer(TopLevelMethodEndPointAnalyzer.getInstance());
     }
@@ -58,6 +65,10 @@ public class EndPointAnalyzersRegistry {
     }
 
     private void registerAllIfNeeded() {
+        if (allRegistered) {
+            return;
+        }
+
         synchronized(defaultAnalyzer) {
             if(!allRegistered) {
                 registerAll();
@@ -93,9 +104,18 @@ public class EndPointAnalyzersRegistry {
     }
 
     private void registerType(EndPointAnalyzer analyzer, OperationType type) {
-        List<EndPointAnalyzer> current = getEndPointAnalyzers(type, true);
-        synchronized(current) {
-        	current.add(analyzer);
+        synchronized(defaultAnalyzer) {
+            Map<OperationType, EndPointAnalyzer[]> updated = new HashMap<OperationType, EndPointAnalyzer[]>(map);
+            EndPointAnalyzer[] current = updated.get(type);
+            EndPointAnalyzer[] analyzers;
+            if (current == null) {
+                analyzers = new EndPointAnalyzer[] { analyzer };
+            } else {
+                analyzers = Arrays.copyOf(current, current.length + 1);
+                analyzers[current.length] = analyzer;
+            }
+            updated.put(type, analyzers);
+            map = Collections.unmodifiableMap(updated);
         }
     }
     
@@ -106,29 +126,27 @@ public class EndPointAnalyzersRegistry {
     	// make sure all the data is there BEFORE calling the analyzer
     	LazyTraceFinalizer.callFinalizeConstructionIfPossible(operation);
         OperationType opType = operation.getType();
-        List<EndPointAnalyzer> analyzers = getEndPointAnalyzers(opType, false);
+        EndPointAnalyzer[] analyzers = map.get(opType);
 
         EndPointAnalysis prev = null, orig = null;
         if (analyzers != null) {
             prev = getEndPointFromHints(builder);
             orig = prev;
 
-            synchronized(analyzers) {
-	            for (EndPointAnalyzer analyzer : analyzers) {
-	            	if (prev != null) {	// check if we can do better than what we have
-	            		int	newScore=analyzer.getScore(frame, depth), prevScore=prev.getScore();
-	            		if (newScore <= prevScore) {
-	            			continue;
-	            		}
-	            	}
-
-	            	EndPointAnalysis	newEndpoint=analyzer.locateEndPoint(frame, depth);
-	            	if (newEndpoint == null) {
-	            		continue;	// can happen because scoring does not tell us if the frame is valid...
-	            	}
-
-	            	prev = newEndpoint;
-	            }
+            for (EndPointAnalyzer analyzer : analyzers) {
+            	if (prev != null) {	// check if we can do better than what we have
+            		int	newScore=analyzer.getScore(frame, depth), prevScore=prev.getScore();
+            		if (newScore <= prevScore) {
+            			continue;
+            		}
+            	}
+
+            	EndPointAnalysis	newEndpoint=analyzer.locateEndPoint(frame, depth);
+            	if (newEndpoint == null) {
+            		continue;	// can happen because scoring does not tell us if the frame is valid...
+            	}
+
+            	prev = newEndpoint;
             }
             
             setEndPointOnHints(builder, prev);
@@ -155,27 +173,27 @@ public class EndPointAnalyzersRegistry {
         }
     }
 
+    /**
+     * @param opType The {@link OperationType}
+     * @return <code>true</code> if any analyzer is registered for the type
+     */
+    public boolean hasEndPointAnalyzers(OperationType opType) {
+        registerAllIfNeeded();
+        return map.containsKey(opType);
+    }
+
     //for testing
-    List<EndPointAnalyzer> getEndPointAnalyzers(OperationType opType, boolean createIfNotExist) {
-        synchronized(map) {
-        	List<EndPointAnalyzer>	list=map.get(opType);
-        	if ((list == null) && createIfNotExist) {
-        		list = new ArrayList<EndPointAnalyzer>();
-        		map.put(opType, list);
-        	}
-
-        	return list;
-        }
+    List<EndPointAnalyzer> getEndPointAnalyzers(OperationType opType) {
+        EndPointAnalyzer[] analyzers = map.get(opType);
+        return (analyzers == null) ? null : Arrays.asList(analyzers);
     }
     
     public List<EndPointAnalyzer> getEndPointAnalyzers() {
         registerAllIfNeeded();
 
         List<EndPointAnalyzer> analyzers=new ArrayList<EndPointAnalyzer>();
-        synchronized(map) {
-            for (Collection<? extends EndPointAnalyzer> analyzersList : map.values()) {
-                analyzers.addAll(analyzersList);
-            }
+        for (EndPointAnalyzer[] typeAnalyzers : map.values()) {
+            analyzers.addAll(Arrays.asList(typeAnalyzers));
         }
         analyzers.add(defaultAnalyzer);
         
@@ -212,8 +230,8 @@ public class EndPointAnalyzersRegistry {
     
     //for testing
     void reset() {
-        synchronized(map) {
-            map.clear();
+        synchronized(defaultAnalyzer) {
+            map = EMPTY_ANALYZERS;
         }
 
         registerAnalyzer(TopLevelMethodEndPointAnalyzer.getInstance());
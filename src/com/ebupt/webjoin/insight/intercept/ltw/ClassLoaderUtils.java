@@ -16,9 +16,14 @@
 
 package com.ebupt.webjoin.insight.intercept.ltw;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.ebupt.webjoin.insight.application.ApplicationName;
 import com.ebupt.webjoin.insight.util.ExceptionUtils;
@@ -29,6 +34,12 @@ import com.ebupt.webjoin.insight.util.ExtraReflectionUtils;
 
 public abstract class ClassLoaderUtils {
     private static final Method addURLMethod;
+    /*
+     * Resolved application name per class loader - the loaders are weakly
+     * referenced so that un-deployed applications can be garbage collected
+     */
+    private static final Map<LoaderKey, ApplicationName> appNames = new ConcurrentHashMap<LoaderKey, ApplicationName>();
+    private static final ReferenceQueue<ClassLoader> staleLoaders = new ReferenceQueue<ClassLoader>();
     static {
         try {
             if ((addURLMethod=ExtraReflectionUtils.getAccessibleMethod(URLClassLoader.class, "addURL", URL.class)) == null) {
@@ -54,6 +65,22 @@ public abstract class ClassLoaderUtils {
     }
     
     public static ApplicationName findApplicationName(ClassLoader cl) {
+        if (cl == null) {
+            return ApplicationName.UNKOWN_APPLICATION;
+        }
+
+        ApplicationName name = appNames.get(new LoaderKey(cl, null));
+        if (name != null) {
+            return name;
+        }
+
+        name = resolveApplicationName(cl);
+        purgeStaleLoaders();
+        appNames.put(new LoaderKey(cl, staleLoaders), name);
+        return name;
+    }
+
+    static ApplicationName resolveApplicationName(ClassLoader cl) {
         InsightClassLoader iwcl = findInsightWeavingClassLoader(cl);
         if (iwcl == null) {
             return ApplicationName.UNKOWN_APPLICATION;
@@ -61,7 +88,50 @@ public abstract class ClassLoaderUtils {
         return iwcl.getApplicationName();
     }
 
+    /**
+     * Discards all the cached {@link #findApplicationName(ClassLoader)} results.
+     * Called whenever an {@link InsightClassLoader} application name changes
+     * or its application is un-deployed
+     */
+    public static void clearApplicationNames() {
+        appNames.clear();
+    }
+
+    private static void purgeStaleLoaders() {
+        for (Reference<? extends ClassLoader> ref = staleLoaders.poll(); ref != null; ref = staleLoaders.poll()) {
+            appNames.remove(ref);
+        }
+    }
+
     public static void addUrl (Object loader, URL url) throws Exception {
     	addURLMethod.invoke(loader, url);
     }
+
+    private static final class LoaderKey extends WeakReference<ClassLoader> {
+        private final int hashCode;
+
+        LoaderKey(ClassLoader cl, ReferenceQueue<ClassLoader> queue) {
+            super(cl, queue);
+            hashCode = System.identityHashCode(cl);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof LoaderKey)) {
+                return false;
+            }
+
+            // cleared keys are only equal to themselves
+            ClassLoader cl = get();
+            return (cl != null) && (cl == ((LoaderKey) obj).get());
+        }
+    }
 }
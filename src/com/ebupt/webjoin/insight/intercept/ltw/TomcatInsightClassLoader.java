@@ -25,6 +25,11 @@ public class TomcatInsightClassLoader extends TomcatInstrumentableClassLoader
 		setApplicationName(deriveApplicationName());
 	}
 
+	public void stop() throws LifecycleException {
+		super.stop();
+		WebappLoadingHelper.applicationUndeployed(this);
+	}
+
 	public void addLookupUrl(URL url) {
 		addRepository(url.toExternalForm());
 	}
@@ -38,8 +43,10 @@ public class TomcatInsightClassLoader extends TomcatInstrumentableClassLoader
 	}
 
 	public void setApplicationName(ApplicationName applicationName) {
-		if (applicationName != null)
+		if (applicationName != null) {
 			this.applicationName = applicationName;
+			ClassLoaderUtils.clearApplicationNames();
+		}
 	}
 
 	private ApplicationName deriveApplicationName() {
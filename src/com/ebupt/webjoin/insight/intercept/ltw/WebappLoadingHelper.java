@@ -17,6 +17,14 @@ public class WebappLoadingHelper {
 		this.searchRoots = searchRoots;
 	}
 
+	/**
+	 * Reports that the application loaded by the given class loader has been
+	 * un-deployed, so that no information cached for it is used any longer
+	 */
+	public static void applicationUndeployed(ClassLoader loader) {
+		ClassLoaderUtils.clearApplicationNames();
+	}
+
 	public Collection<String> getClassLoaderSearchUrls() {
 		List<String> res = new ArrayList<String>();
 		List<String> aopFile = new ArrayList<String>();
@@ -74,6 +74,9 @@ public final class Operation implements LazyConstructor, Serializable {
     private SourceCodeLocation sourceCodeLocation;
     
     private Map<String, Object> properties;
+
+    // read-only parent whose properties are visible unless overridden
+    private transient Operation template;
     
     private transient List<OperationFinalizer> finalizers;
     
@@ -96,6 +99,7 @@ public final class Operation implements LazyConstructor, Serializable {
      * simplify data access for view rendering.
      */
     public Map<String, Object> asMap(OperationFieldVisitor visitor) {
+        resolveTemplate();
         Map<String, Object> map = new HashMap<String, Object>(properties.size());
         for (Map.Entry<String,?> vp : properties.entrySet()) {
             String  key=vp.getKey();
@@ -183,7 +187,11 @@ public final class Operation implements LazyConstructor, Serializable {
      * @return the value at the specified map key.
      */
     public Object get(String key) {
-        return properties.get(key);
+        Object value = properties.get(key);
+        if ((value == null) && (template != null) && (!properties.containsKey(key))) {
+            return template.get(key);
+        }
+        return value;
     }
 
     /**
@@ -245,6 +253,7 @@ public final class Operation implements LazyConstructor, Serializable {
      * @return the number of entries currently in the map
      */
     public int size() {
+        resolveTemplate();
         return properties.size();
     }
 
@@ -252,10 +261,12 @@ public final class Operation implements LazyConstructor, Serializable {
      * @return the map keys
      */
     public Set<String> keySet() {
+        resolveTemplate();
         return new TreeSet<String>(properties.keySet());
     }
 
     public List<Map.Entry<String,Object>> entrySet () {
+        resolveTemplate();
         return new ArrayList<Map.Entry<String,Object>>(properties.entrySet());
     }
 
@@ -412,10 +423,48 @@ public final class Operation implements LazyConstructor, Serializable {
      * @return this operation
      */
     public Operation copyPropertiesFrom(Operation source) {
+        if (source.template != null) {
+            properties.putAll(source.template.properties);
+        }
         properties.putAll(source.properties);
         return this;
     }
 
+    /**
+     * Same as {@link #copyPropertiesFrom(Operation)}, but without copying
+     * anything - the source is referenced as a read-only parent whose
+     * properties are copied only if this operation needs to enumerate or
+     * remove them. The source must not be modified afterwards.
+     *
+     * @return this operation
+     */
+    public Operation inheritPropertiesFrom(Operation source) {
+        if ((template != null) || (source.template != null)) {
+            resolveTemplate();
+            return copyPropertiesFrom(source);
+        }
+
+        // the source properties override the current ones
+        if (!properties.isEmpty()) {
+            for (String key : source.properties.keySet()) {
+                properties.remove(key);
+            }
+        }
+        template = source;
+        return this;
+    }
+
+    private void resolveTemplate() {
+        if (template == null) {
+            return;
+        }
+
+        Map<String, Object> resolved = new HashMap<String, Object>(template.properties);
+        resolved.putAll(properties);
+        properties = resolved;
+        template = null;
+    }
+
     /**
      * Create a child map in the current map for the key
      *   
@@ -439,6 +488,7 @@ public final class Operation implements LazyConstructor, Serializable {
     }
 
     public void remove(String key) {
+        resolveTemplate();
         this.properties.remove(key);
     }
     
@@ -463,6 +513,15 @@ public final class Operation implements LazyConstructor, Serializable {
         return this;
     }
 
+    /**
+     * @return The object added via {@link #addFinalizerObject(String, Object)}
+     * - <code>null</code> if none or the operation has already been finalized
+     */
+    public Object getFinalizerObject(String key) {
+        Map<String, Object> objects = finalizerRichObjects;
+        return (objects == null) ? null : objects.get(key);
+    }
+
     public boolean isFinalizable() {
         synchronized (this) {
             return finalizers != null && !finalizers.isEmpty();
@@ -487,12 +546,14 @@ public final class Operation implements LazyConstructor, Serializable {
         if (isFinalizable()) {
             finalizeConstruction();
         }
+        resolveTemplate();
         out.defaultWriteObject();
     }
 
     // Setter Methods package scope to allow for mutability in deserialization
     void setProperties(Map<String, Object> props) {
         this.properties = props;
+        this.template = null;
     }
 
     @Override
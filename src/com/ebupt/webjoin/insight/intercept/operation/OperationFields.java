@@ -68,4 +68,9 @@ public final class OperationFields {
      * Used by parent resources only
      */
     public static final String PARENT_KEY = "ParentKey";
+    /**
+     * {@link OperationMap} of per-{@link OperationType} counters for the
+     * child frames that were elided once the trace reached its frames limit
+     */
+    public static final String OVERFLOW_SUMMARY = "overflowSummary";
 }
@@ -16,6 +16,7 @@
 package com.ebupt.webjoin.insight.intercept.plugin;
 
 import com.ebupt.webjoin.insight.intercept.endpoint.EndPointAnalyzer;
+import com.ebupt.webjoin.insight.intercept.trace.TraceAnalyzer;
 
 
 public abstract class PluginRuntimeDescriptor {
@@ -26,6 +27,14 @@ public abstract class PluginRuntimeDescriptor {
     
     public abstract EndPointAnalyzer[] getEndPointAnalyzers();
     public abstract String getPluginName();
+
+    /**
+     * @return The {@link TraceAnalyzer}-s to be invoked on each trace before
+     * it is dispatched - default=none
+     */
+    public TraceAnalyzer[] getTraceAnalyzers() {
+        return null;
+    }
     
     
     protected EndPointAnalyzer[] toArray(EndPointAnalyzer... analyzers) {
@@ -30,6 +30,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.ebupt.webjoin.insight.intercept.endpoint.EndPointAnalyzer;
+import com.ebupt.webjoin.insight.intercept.trace.TraceAnalyzer;
 import com.ebupt.webjoin.insight.util.ArrayUtil;
 import com.ebupt.webjoin.insight.util.ClassUtil;
 import com.ebupt.webjoin.insight.util.StringUtil;
@@ -174,6 +175,26 @@ public class PluginRuntimeDescriptorsRegistery {
         return toReturn;
     }
 
+    public List<TraceAnalyzer> getTraceAnalyzers() {
+        registerAllIfNeeded();
+
+        final Collection<? extends PluginRuntimeDescriptor>   descs;
+        synchronized(descriptorsMap) {
+            descs = descriptorsMap.values();
+            if (descs.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<TraceAnalyzer> toReturn = new ArrayList<TraceAnalyzer>(descs.size());
+        for(PluginRuntimeDescriptor desc : descs) {
+            TraceAnalyzer[] analyzers = desc.getTraceAnalyzers();
+            ArrayUtil.addAll(toReturn, analyzers);
+        }
+
+        return toReturn;
+    }
+
     public List<PluginDescriptor> getPluginDescriptors() {
         registerAllIfNeeded();
 
@@ -0,0 +1,71 @@
+package com.ebupt.webjoin.insight.intercept.trace;
+
+import com.ebupt.webjoin.insight.intercept.operation.OperationMap;
+import com.ebupt.webjoin.insight.intercept.operation.OperationType;
+
+/**
+ * Aggregates the frames of a single {@link OperationType} that were elided
+ * once the trace reached its {@link FrameBuilder#MAX_FRAMES_PER_TRACE} limit.
+ * Durations are kept in nanoseconds, same as {@link com.ebupt.webjoin.insight.intercept.util.time.TimeRange}.
+ */
+public class FrameOverflowSummary {
+    public static final String COUNT = "count";
+    public static final String TOTAL = "totalDuration";
+    public static final String MIN = "minDuration";
+    public static final String MAX = "maxDuration";
+
+    private final OperationType type;
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public FrameOverflowSummary(OperationType opType) {
+        this.type = opType;
+    }
+
+    public void add(long duration) {
+        count++;
+        total += duration;
+        if (duration < min) {
+            min = duration;
+        }
+        if (duration > max) {
+            max = duration;
+        }
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalDuration() {
+        return total;
+    }
+
+    public long getMinDuration() {
+        return (count <= 0L) ? 0L : min;
+    }
+
+    public long getMaxDuration() {
+        return (count <= 0L) ? 0L : max;
+    }
+
+    public OperationMap populate(OperationMap map) {
+        return map.put(COUNT, getCount())
+                  .put(TOTAL, getTotalDuration())
+                  .put(MIN, getMinDuration())
+                  .put(MAX, getMaxDuration())
+                  ;
+    }
+
+    @Override
+    public String toString() {
+        return type.getName() + "[count=" + getCount() + ", total=" + getTotalDuration()
+             + ", min=" + getMinDuration() + ", max=" + getMaxDuration() + "]";
+    }
+}
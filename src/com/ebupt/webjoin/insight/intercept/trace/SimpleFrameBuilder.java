@@ -1,7 +1,9 @@
 package com.ebupt.webjoin.insight.intercept.trace;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -18,6 +20,8 @@ import com.ebupt.webjoin.insight.intercept.endpoint.EndPointPopulator;
 import com.ebupt.webjoin.insight.intercept.ltw.ClassLoaderUtils;
 import com.ebupt.webjoin.insight.intercept.operation.Operation;
 import com.ebupt.webjoin.insight.intercept.operation.OperationFields;
+import com.ebupt.webjoin.insight.intercept.operation.OperationMap;
+import com.ebupt.webjoin.insight.intercept.operation.OperationType;
 import com.ebupt.webjoin.insight.intercept.util.time.NanoStopWatch;
 import com.ebupt.webjoin.insight.intercept.util.time.StopWatch;
 import com.ebupt.webjoin.insight.intercept.util.time.StopWatchFactory;
@@ -40,6 +44,12 @@ import com.ebupt.webjoin.insight.util.StringUtil;
  *   stack = builder.exit()
  */
 public class SimpleFrameBuilder implements FrameBuilder {
+    /**
+     * If <code>true</code> then end-point analysis is done once when the root
+     * frame exits - over the finished frames tree - instead of on each frame exit
+     */
+    public static final boolean DEFER_ENDPOINT_ANALYSIS = Boolean.getBoolean("insight.endpoint.analysis.deferred");
+
     private final StopWatchFactory watchFactory;
 
     private StopWatchFrame topLevelFrame;
@@ -54,6 +64,11 @@ public class SimpleFrameBuilder implements FrameBuilder {
     private final Insight insight;
     private PostCollectionStrategyRunner runner = PostCollectionStrategyRunner.getInstance();
     private int depth;
+    private int maxFrames = MAX_FRAMES_PER_TRACE;
+    private boolean deferEndPointAnalysis = DEFER_ENDPOINT_ANALYSIS;
+    private boolean overflowReported;
+    // frames entered after maxFrames has been reached - only their parent summary is kept
+    private final List<StopWatchFrame> elidedFrames = new ArrayList<StopWatchFrame>();
 
     public SimpleFrameBuilder() {
         this(new NanoStopWatch.NanoStopWatchFactory(), new DelegatingFrameBuilderCallbacks());
@@ -87,10 +102,14 @@ public class SimpleFrameBuilder implements FrameBuilder {
         // frames has been reached before cutting the cord. Instead, if as aspect
         // derived from insight collections blows up the aborted hint is set and the
         // next time a frame enters the frame stack will be reset.
-        if (aborted /*|| (frameCount >= MAX_FRAMES_PER_TRACE)*/) {
+        //
+        // Once the MAX_FRAMES_PER_TRACE limit is reached the trace is kept, but any
+        // further frames are not added to the tree - instead they are aggregated
+        // per operation type into overflow summaries on their (last kept) parent frame
+        if (aborted) {
             Logger.getLogger(getClass().getName()).log(Level.SEVERE,
-                    "Frame stack exceeded MAX_FRAMES_PER_TRACE limit or has been aborted " +
-                            "limit: " + MAX_FRAMES_PER_TRACE + " frameCount: " + frameCount
+                    "Frame stack has been aborted " +
+                            "limit: " + maxFrames + " frameCount: " + frameCount
                             + " aborted: " + aborted);
             setHint(HINT_ABORTED, Boolean.TRUE);
 
@@ -104,7 +123,12 @@ public class SimpleFrameBuilder implements FrameBuilder {
             callbacks.enterRootFrame();
             topLevelFrame = createAndEnterTopLevelFrame(op);
             workingFrame = topLevelFrame;
-            findEndPoint(topLevelFrame);
+            if (!deferEndPointAnalysis) {
+                findEndPoint(topLevelFrame);
+            }
+        } else if (frameCount >= maxFrames) {
+            depth ++;
+            enterElidedFrame(op);
         } else {
             depth ++;
             StopWatchFrame oldWorking = workingFrame;
@@ -114,26 +138,93 @@ public class SimpleFrameBuilder implements FrameBuilder {
         
     }
 
-    private void findEndPoint(Frame frame) {
-        if (!aborted && hasEndPointPopulator) {
-        	ApplicationName	app=getHint(HINT_APPNAME, ApplicationName.class);
-        	if ((app == null) || ApplicationName.UNKOWN_APPLICATION.equals(app)) {
-        		ClassLoader	cl=ClassUtil.getDefaultClassLoader(getClass());
-        		app = ClassLoaderUtils.findApplicationName(cl);
-        		if (!ApplicationName.UNKOWN_APPLICATION.equals(app)) {
-        			setHint(HINT_APPNAME, app);
-        		}
-        	}
+    private void enterElidedFrame(Operation op) {
+        if (!overflowReported) {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING,
+                    "Frame stack reached MAX_FRAMES_PER_TRACE limit: " + maxFrames
+                  + " - summarizing further frames of " + topLevelFrame.getOperation());
+            overflowReported = true;
+        }
 
-        	if (insight.isContextIgnored(app)) {
-        		return;	// don't spend any time on ignored applications
-        	}
+        StopWatchFrame parent = elidedFrames.isEmpty() ? workingFrame : elidedFrames.get(elidedFrames.size() - 1);
+        StopWatchFrame res = new StopWatchFrame(parent.getId(), parent, traceWatch);
+        res.markElided();
+        res.enter(op);
+        elidedFrames.add(res);
+    }
+
+    private Frame exitElidedFrame() {
+        StopWatchFrame frame = elidedFrames.remove(elidedFrames.size() - 1);
+        frame.exit();
+
+        Operation op = frame.getOperation();
+        OperationType type = (op == null) ? null : op.getType();
+        // nested elided frames are all accounted for on the last kept frame
+        workingFrame.addOverflow((type == null) ? OperationType.UNKNOWN : type, frame.getRange().getDuration());
+        depth--;
+        return frame;
+    }
+
+    private void populateOverflowSummaries(StopWatchFrame frame) {
+        Map<OperationType, FrameOverflowSummary> summaries = frame.getOverflowSummaries();
+        if (summaries.isEmpty()) {
+            return;
+        }
 
+        OperationMap map = frame.getOperation().createMap(OperationFields.OVERFLOW_SUMMARY);
+        for (FrameOverflowSummary summary : summaries.values()) {
+            summary.populate(map.createMap(summary.getType().getName()));
+        }
+    }
+
+    private void findEndPoint(Frame frame) {
+        if (isEndPointAnalysisRequired()) {
             EndPointAnalyzersRegistry   registry=EndPointAnalyzersRegistry.getInstance();
             registry.findEndPointAnalysis(this, frame, depth);
         }
     }
 
+    /**
+     * Runs the end-point analysis over the finished frames tree - the root
+     * first (as if it has just been entered) and then the rest of the frames
+     * in the same order as they exited. Only frames whose type has registered
+     * analyzers are analyzed.
+     */
+    private void findEndPoints(Frame root) {
+        if (isEndPointAnalysisRequired()) {
+            EndPointAnalyzersRegistry   registry=EndPointAnalyzersRegistry.getInstance();
+            registry.findEndPointAnalysis(this, root, 1);
+            findEndPoints(registry, root.getChildren(), 2);
+        }
+    }
+
+    private void findEndPoints(EndPointAnalyzersRegistry registry, List<Frame> frames, int level) {
+        for (Frame frame : frames) {
+            findEndPoints(registry, frame.getChildren(), level + 1);
+            if (registry.hasEndPointAnalyzers(frame.getOperation().getType())) {
+                registry.findEndPointAnalysis(this, frame, level);
+            }
+        }
+    }
+
+    private boolean isEndPointAnalysisRequired() {
+        if (aborted || (!hasEndPointPopulator)) {
+            return false;
+        }
+
+        ApplicationName	app=getHint(HINT_APPNAME, ApplicationName.class);
+        if ((app == null) || ApplicationName.UNKOWN_APPLICATION.equals(app)) {
+            ClassLoader	cl=ClassUtil.getDefaultClassLoader(getClass());
+            app = ClassLoaderUtils.findApplicationName(cl);
+            if (!ApplicationName.UNKOWN_APPLICATION.equals(app)) {
+                setHint(HINT_APPNAME, app);
+            }
+        }
+
+        // don't spend any time on ignored applications
+        return !insight.isContextIgnored(app);
+    }
+
     private void clearAndStartTraceWatch() {
         long startNanos = TimeUtil.millisToNanos(System.currentTimeMillis());
         traceWatch = watchFactory.createWatch();
@@ -171,6 +262,9 @@ public class SimpleFrameBuilder implements FrameBuilder {
     }
 
     public Frame peekFrame () {
+    	if (!elidedFrames.isEmpty()) {
+    		return elidedFrames.get(elidedFrames.size() - 1);
+    	}
     	return workingFrame;
     }
 
@@ -181,22 +275,32 @@ public class SimpleFrameBuilder implements FrameBuilder {
                     "Attempted to exit a frame when none was in process");
             return null;
         }
-        workingFrame.getOperation().finalizeConstruction();
-        Frame oldWorkingFrame = workingFrame;
+        if (!elidedFrames.isEmpty()) {
+            return exitElidedFrame();
+        }
+        populateOverflowSummaries(workingFrame);
+        StopWatchFrame oldWorkingFrame = workingFrame;
         workingFrame = (StopWatchFrame) workingFrame.getParent();
         
-        ((StopWatchFrame)oldWorkingFrame).exit();
+        oldWorkingFrame.exit();
         if (workingFrame != null) {
             workingFrame.addChild(oldWorkingFrame);
         }
         
         runner.run(oldWorkingFrame);
+        // no need to populate (or analyze) operations that will never be reported
+        boolean discarded = oldWorkingFrame.isDiscarded();
+        if (!discarded) {
+            oldWorkingFrame.getOperation().finalizeConstruction();
+        }
         
         if (workingFrame == null) {
             exitingRoot = true;
-        } else if (oldWorkingFrame.getParent() != null) {
+        } else if ((oldWorkingFrame.getParent() != null) && (!discarded)) {
         	callbacks.exitChildFrame(oldWorkingFrame);
-        	findEndPoint(oldWorkingFrame);
+        	if (!deferEndPointAnalysis) {
+        		findEndPoint(oldWorkingFrame);
+        	}
         }
         
         depth--;
@@ -219,6 +323,10 @@ public class SimpleFrameBuilder implements FrameBuilder {
             	return null;
             }
 
+            if (deferEndPointAnalysis) {
+                findEndPoints(oldWorkingFrame);
+            }
+
             ColorManager	colorManager=ColorManager.getInstance();
             colorManager.setColor(oldWorkingFrame.getOperation());                
             callbacks.exitRootFrame(oldWorkingFrame, hints);
@@ -229,6 +337,10 @@ public class SimpleFrameBuilder implements FrameBuilder {
     }
     
     public void discard(Frame frame) {
+        if ((frame instanceof StopWatchFrame) && ((StopWatchFrame) frame).isElided()) {
+            return; // already accounted for only in its parent's summary
+        }
+
         if (!isFrameInTrace(frame)) {
             throw new IllegalArgumentException("Frame " + frame.getId() + " is not part of this trace " + topLevelFrame.getId());
         }
@@ -261,6 +373,8 @@ public class SimpleFrameBuilder implements FrameBuilder {
         workingFrame = null;
         frameCount = 0L;
         traceWatch = null;
+        elidedFrames.clear();
+        overflowReported = false;
 
         if ((MapUtil.size(hints) > 0) && (ArrayUtil.length(preservedHints) > 0)) {
         	Map<String,Object>	oldHints=null;
@@ -342,7 +456,45 @@ public class SimpleFrameBuilder implements FrameBuilder {
         return frameCount;
     }
 
+    public PostCollectionStrategyRunner getPostCollectionStrategyRunner() {
+        return runner;
+    }
+
+    public void setPostCollectionStrategyRunner(PostCollectionStrategyRunner strategyRunner) {
+        runner = strategyRunner;
+    }
+
+    public boolean isDeferEndPointAnalysis() {
+        return deferEndPointAnalysis;
+    }
+
+    /**
+     * @param deferred <code>true</code> if end-point analysis should be done
+     * only once the root frame exits. Defaults to {@link #DEFER_ENDPOINT_ANALYSIS}
+     */
+    public void setDeferEndPointAnalysis(boolean deferred) {
+        deferEndPointAnalysis = deferred;
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    /**
+     * @param limit Max. number of frames kept in a trace - beyond it frames
+     * are only summarized on their parent. Defaults to {@link #MAX_FRAMES_PER_TRACE}
+     */
+    public void setMaxFrames(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Bad max. frames value: " + limit);
+        }
+        maxFrames = limit;
+    }
+
     public boolean isFrameInTrace(Frame frame) {
+        if ((frame instanceof StopWatchFrame) && ((StopWatchFrame) frame).isElided()) {
+            return false;
+        }
         return (frame == topLevelFrame) || (frame == workingFrame) || FrameUtil.frameIsAncestor(topLevelFrame, frame);
     }
 
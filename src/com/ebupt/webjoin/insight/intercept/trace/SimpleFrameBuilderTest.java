@@ -0,0 +1,152 @@
+package com.ebupt.webjoin.insight.intercept.trace;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.ebupt.webjoin.insight.application.ApplicationName;
+import com.ebupt.webjoin.insight.collection.strategy.PostCollectionStrategy;
+import com.ebupt.webjoin.insight.collection.strategy.PostCollectionStrategyRunner;
+import com.ebupt.webjoin.insight.intercept.endpoint.EndPointPopulator;
+import com.ebupt.webjoin.insight.intercept.operation.Operation;
+import com.ebupt.webjoin.insight.intercept.operation.OperationFinalizer;
+import com.ebupt.webjoin.insight.intercept.operation.OperationFields;
+import com.ebupt.webjoin.insight.intercept.operation.OperationMap;
+import com.ebupt.webjoin.insight.intercept.operation.OperationType;
+import com.ebupt.webjoin.insight.intercept.util.time.NanoStopWatch;
+
+import junit.framework.TestCase;
+
+public class SimpleFrameBuilderTest extends TestCase {
+	private static final int MAX_FRAMES = 100;
+	private static final int NUM_CALLS = 5000000;
+	private static final long MAX_RETAINED_BYTES = 64L * 1024L * 1024L;
+
+	SimpleFrameBuilder builder = new SimpleFrameBuilder();
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		builder.setMaxFrames(MAX_FRAMES);
+	}
+
+	protected void tearDown() throws Exception {
+		builder.dump();
+		super.tearDown();
+	}
+
+	public void testOverflowFramesAreSummarized() {
+		OperationType loopType = OperationType.valueOf("loop-call");
+		OperationType nestedType = OperationType.valueOf("loop-nested-call");
+		builder.enter(new Operation().type(OperationType.HTTP).label("batch"));
+
+		long heapBefore = usedHeap();
+		for (int i = 0; i < NUM_CALLS; i++) {
+			builder.enter(new Operation().type(loopType).label("call"));
+			if ((i % 1000) == 0) {
+				builder.enter(new Operation().type(nestedType).label("nested"));
+				builder.exit();
+			}
+			builder.exit();
+		}
+		long heapAfter = usedHeap();
+		assertTrue("Heap grew by " + (heapAfter - heapBefore) + " bytes",
+				(heapAfter - heapBefore) < MAX_RETAINED_BYTES);
+
+		StopWatchFrame root = (StopWatchFrame) builder.peekFrame();
+		int keptLoops = MAX_FRAMES - 2;	// the root + the 1st nested call are also kept
+		assertEquals(keptLoops, root.getChildren().size());
+
+		FrameOverflowSummary loops = root.getOverflowSummaries().get(loopType);
+		assertEquals(NUM_CALLS - keptLoops, loops.getCount());
+		assertTrue(loops.getMinDuration() <= loops.getMaxDuration());
+		assertTrue(loops.getTotalDuration() >= loops.getMaxDuration());
+
+		FrameOverflowSummary nested = root.getOverflowSummaries().get(nestedType);
+		assertEquals((NUM_CALLS / 1000) - 1, nested.getCount());
+
+		Frame frame = builder.exit();
+		OperationMap summary = frame.getOperation().get(OperationFields.OVERFLOW_SUMMARY, OperationMap.class);
+		assertNotNull("No summary populated", summary);
+		OperationMap loopSummary = summary.get(loopType.getName(), OperationMap.class);
+		assertEquals(Long.valueOf(loops.getCount()), loopSummary.get(FrameOverflowSummary.COUNT, Long.class));
+	}
+
+	public void testElidedFrameDiscardIgnored() {
+		builder.setMaxFrames(1);
+		builder.enter(new Operation().type(OperationType.HTTP));
+		builder.enter(new Operation().type(OperationType.METHOD));
+
+		Frame elided = builder.peekFrame();
+		assertFalse(builder.isFrameInTrace(elided));
+		assertSame(elided, builder.exit());
+		builder.discard(elided);
+
+		Frame root = builder.exit();
+		assertTrue(root.isRoot());
+		assertEquals(0, root.getChildren().size());
+	}
+
+	public void testDiscardedFrameNeverFinalized() {
+		final int[] exitedChildren = { 0 };
+		final SimpleFrameBuilder discarding = new SimpleFrameBuilder(new NanoStopWatch.NanoStopWatchFactory(),
+				new NullFrameBuilderCallback() {
+					@Override
+					public void exitChildFrame(Frame frame) {
+						exitedChildren[0]++;
+					}
+
+					public List<FrameBuilderEvent> listensTo() {
+						return Arrays.asList(FrameBuilderEvent.CHILD_EXIT);
+					}
+				});
+		discarding.setDeferEndPointAnalysis(false);
+		discarding.setPostCollectionStrategyRunner(new PostCollectionStrategyRunner(new PostCollectionStrategy() {
+			public boolean isEnabled() {
+				return true;
+			}
+
+			public void run(Frame frame) {
+				if (!frame.isRoot()) {
+					discarding.discard(frame);
+				}
+			}
+		}));
+
+		final int[] finalized = { 0 };
+		Operation discarded = new Operation().type(OperationType.METHOD).label("discarded");
+		discarded.addFinalizer(new OperationFinalizer() {
+			public void finalize(Operation operation, Map<String, Object> richObjects) {
+				finalized[0]++;
+			}
+		});
+
+		discarding.enter(new Operation().type(OperationType.HTTP).label("root"));
+		discarding.setHint(FrameBuilder.HINT_APPNAME, ApplicationName.valueOf("test"));
+		discarding.setHint(EndPointPopulator.HINT_NAME, new EndPointPopulator() {
+			public void populateNameKey(String key, String nameKey) {
+				// ignored
+			}
+
+			public boolean containsNameKey(String key) {
+				return false;
+			}
+		});
+		discarding.enter(discarded);
+		discarding.exit();
+
+		assertEquals("Discarded operation finalized", 0, finalized[0]);
+		assertEquals("Discarded frame reported", 0, exitedChildren[0]);
+
+		Frame root = discarding.exit();
+		assertEquals(0, root.getChildren().size());
+		assertEquals("Discarded operation finalized on root exit", 0, finalized[0]);
+	}
+
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			rt.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
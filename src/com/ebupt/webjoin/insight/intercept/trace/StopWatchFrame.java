@@ -2,9 +2,13 @@ package com.ebupt.webjoin.insight.intercept.trace;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import com.ebupt.webjoin.insight.intercept.operation.Operation;
+import com.ebupt.webjoin.insight.intercept.operation.OperationType;
 import com.ebupt.webjoin.insight.intercept.util.time.StopWatch;
 import com.ebupt.webjoin.insight.intercept.util.time.Time;
 import com.ebupt.webjoin.insight.intercept.util.time.TimeRange;
@@ -20,6 +24,9 @@ public class StopWatchFrame implements Frame, Serializable {
 	private transient boolean entered;
 	private transient boolean exited;
 	private transient StopWatch watch;
+	private transient boolean elided;
+	private transient boolean discarded;
+	private transient Map<OperationType, FrameOverflowSummary> overflowSummaries;
 
 	@SuppressWarnings("unused")
 	private StopWatchFrame() {
@@ -112,8 +119,48 @@ public class StopWatchFrame implements Frame, Serializable {
 	}
 
 	public void discard(StopWatchFrame frame) {
-		this.children.remove(frame);
+		if (this.children.remove(frame)) {
+			frame.discarded = true;
+		}
 	}
 
-	
+	/**
+	 * @return <code>true</code> if this frame was removed from its parent
+	 */
+	public boolean isDiscarded() {
+		return this.discarded;
+	}
+
+	/**
+	 * @return <code>true</code> if this frame was entered after the trace
+	 * reached its frames limit - i.e., it is not part of the frames tree
+	 * and is only accounted for in its parent's overflow summaries
+	 */
+	public boolean isElided() {
+		return this.elided;
+	}
+
+	void markElided() {
+		this.elided = true;
+	}
+
+	void addOverflow(OperationType type, long duration) {
+		if (this.overflowSummaries == null) {
+			this.overflowSummaries = new TreeMap<OperationType, FrameOverflowSummary>(OperationType.BY_NAME_COMPARATOR);
+		}
+
+		FrameOverflowSummary summary = this.overflowSummaries.get(type);
+		if (summary == null) {
+			summary = new FrameOverflowSummary(type);
+			this.overflowSummaries.put(type, summary);
+		}
+		summary.add(duration);
+	}
+
+	public Map<OperationType, FrameOverflowSummary> getOverflowSummaries() {
+		if (this.overflowSummaries == null) {
+			return Collections.emptyMap();
+		}
+		return Collections.unmodifiableMap(this.overflowSummaries);
+	}
 }
\ No newline at end of file
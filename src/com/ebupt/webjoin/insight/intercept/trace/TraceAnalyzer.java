@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ebupt.webjoin.insight.intercept.trace;
+
+/**
+ * Invoked with each finished {@link Trace} just before it is dispatched -
+ * e.g., to mark patterns that span several frames. Plugins contribute their
+ * analyzers via their runtime descriptor (see {@link TraceAnalyzersRegistry})
+ */
+public interface TraceAnalyzer {
+	void analyzeTrace(Trace trace);
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ebupt.webjoin.insight.intercept.trace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ebupt.webjoin.insight.intercept.plugin.PluginRuntimeDescriptorsRegistery;
+import com.ebupt.webjoin.insight.util.ListUtil;
+
+public class TraceAnalyzersRegistry {
+    private static final TraceAnalyzer[] EMPTY_ANALYZERS = new TraceAnalyzer[0];
+    // NOTE: must be initialized after the empty analyzers array
+    private static final TraceAnalyzersRegistry INSTANCE = new TraceAnalyzersRegistry();
+    /*
+     * Immutable snapshot that is replaced (under the lock) whenever an
+     * analyzer is (un-)registered, so that analyzing each dispatched trace
+     * requires no locking
+     */
+    private volatile TraceAnalyzer[] analyzers = EMPTY_ANALYZERS;
+    private final Object lock = new Object();
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    private volatile boolean allRegistered;
+
+    private TraceAnalyzersRegistry() {
+        super();
+    }
+
+    public static final TraceAnalyzersRegistry getInstance () {
+        return INSTANCE;
+    }
+
+    private void registerAllIfNeeded() {
+        if (allRegistered) {
+            return;
+        }
+
+        synchronized(lock) {
+            if(!allRegistered) {
+                registerAll();
+                allRegistered = true;
+            }
+        }
+    }
+
+    private void registerAll() {
+        PluginRuntimeDescriptorsRegistery   registry=PluginRuntimeDescriptorsRegistery.getInstance();
+        register(registry.getTraceAnalyzers());
+    }
+
+    private void register(Collection<? extends TraceAnalyzer> toRegister) {
+        if (ListUtil.size(toRegister) <= 0) {
+            return;
+        }
+
+        for (TraceAnalyzer analyzer : toRegister) {
+            registerAnalyzer(analyzer);
+        }
+    }
+
+    public void registerAnalyzer(TraceAnalyzer analyzer) {
+        if (analyzer == null) {
+            throw new IllegalArgumentException("No analyzer provided");
+        }
+
+        synchronized(lock) {
+            TraceAnalyzer[] updated = Arrays.copyOf(analyzers, analyzers.length + 1);
+            updated[analyzers.length] = analyzer;
+            analyzers = updated;
+        }
+    }
+
+    /**
+     * @param analyzer The {@link TraceAnalyzer} to remove
+     * @return <code>true</code> if the analyzer was registered
+     */
+    public boolean unregisterAnalyzer(TraceAnalyzer analyzer) {
+        synchronized(lock) {
+            List<TraceAnalyzer> updated = new ArrayList<TraceAnalyzer>(Arrays.asList(analyzers));
+            if (!updated.remove(analyzer)) {
+                return false;
+            }
+
+            analyzers = updated.toArray(new TraceAnalyzer[updated.size()]);
+            return true;
+        }
+    }
+
+    /**
+     * Runs all the registered analyzers on the trace - a failing analyzer
+     * is logged and does not prevent the others (or the dispatch) from running
+     * @param trace The {@link Trace} about to be dispatched
+     */
+    public void analyzeTrace(Trace trace) {
+        registerAllIfNeeded();
+
+        for (TraceAnalyzer analyzer : analyzers) {
+            try {
+                analyzer.analyzeTrace(trace);
+            } catch(RuntimeException e) {
+                logger.log(Level.WARNING, "analyzeTrace(" + trace.getId() + ")[" + analyzer.getClass().getSimpleName() + "] "
+                         + e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    public List<TraceAnalyzer> getTraceAnalyzers() {
+        registerAllIfNeeded();
+        return Arrays.asList(analyzers);
+    }
+}
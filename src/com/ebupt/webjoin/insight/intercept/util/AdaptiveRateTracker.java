@@ -0,0 +1,149 @@
+package com.ebupt.webjoin.insight.intercept.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allows processing of values at (approx.) a target rate per second regardless
+ * of the rate at which they are offered. Once a second the offered rate is
+ * folded into an exponentially weighted moving average (EWMA) and the allowed
+ * probability is re-computed as <code>target / average</code>. Within each
+ * second values are allowed deterministically so that the allowed/offered
+ * ratio follows that probability.
+ */
+public class AdaptiveRateTracker {
+	/**
+	 * Weight given to the last second when updating the average offered rate
+	 */
+	public static final double DEFAULT_SMOOTHING = 0.5d;
+	public static final long WINDOW_MILLIS = 1000L;
+
+	public interface Clock {
+		long currentTimeMillis();
+	}
+
+	public static final Clock SYSTEM_CLOCK = new Clock() {
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+	};
+
+	private final String name;
+	private final Clock clock;
+	private final double smoothing;
+	private final AtomicLong windowStart;
+	private final AtomicLong offeredValues = new AtomicLong(0L);
+	private final AtomicLong processedValues = new AtomicLong(0L);
+	private volatile int targetRate;
+	private volatile double averageRate;
+	private volatile double probability = 1.0d;
+
+	public AdaptiveRateTracker(String id, int tracesPerSecond) {
+		this(id, tracesPerSecond, SYSTEM_CLOCK, DEFAULT_SMOOTHING);
+	}
+
+	public AdaptiveRateTracker(String id, int tracesPerSecond, Clock timeSource, double weight) {
+		if ((weight <= 0.0d) || (weight > 1.0d)) {
+			throw new IllegalArgumentException("Bad smoothing weight: " + weight);
+		}
+
+		this.name = id;
+		this.targetRate = tracesPerSecond;
+		this.clock = timeSource;
+		this.smoothing = weight;
+		this.windowStart = new AtomicLong(timeSource.currentTimeMillis());
+	}
+
+	public final String getName() {
+		return this.name;
+	}
+
+	public int getTargetRate() {
+		return this.targetRate;
+	}
+
+	/**
+	 * @param tracesPerSecond The target rate - non-positive means no values
+	 * are allowed
+	 */
+	public void setTargetRate(int tracesPerSecond) {
+		this.targetRate = tracesPerSecond;
+		updateProbability();
+	}
+
+	/**
+	 * @return The average offered rate (values per second) as of the last
+	 * completed second
+	 */
+	public double getAverageRate() {
+		return this.averageRate;
+	}
+
+	/**
+	 * @return The probability of a value being allowed in the current second
+	 */
+	public double getProbability() {
+		return this.probability;
+	}
+
+	public void reset() {
+		this.windowStart.set(this.clock.currentTimeMillis());
+		this.offeredValues.set(0L);
+		this.processedValues.set(0L);
+		this.averageRate = 0.0d;
+		this.probability = 1.0d;
+	}
+
+	public boolean isValueProcessingAllowed() {
+		if (getTargetRate() <= 0) {
+			return false;
+		}
+
+		rollWindowIfNeeded();
+
+		long offered = this.offeredValues.incrementAndGet();
+		double p = this.probability;
+		if ((p < 1.0d) && (this.processedValues.get() >= (p * offered))) {
+			return false;
+		}
+
+		this.processedValues.incrementAndGet();
+		return true;
+	}
+
+	private void rollWindowIfNeeded() {
+		long start = this.windowStart.get();
+		long now = this.clock.currentTimeMillis();
+		long elapsed = now - start;
+		if (elapsed < WINDOW_MILLIS) {
+			return;
+		}
+
+		// only one thread gets to close the window
+		if (!this.windowStart.compareAndSet(start, now)) {
+			return;
+		}
+
+		long offered = this.offeredValues.getAndSet(0L);
+		this.processedValues.set(0L);
+
+		double rate = (offered * 1000.0d) / elapsed;
+		double prev = this.averageRate;
+		this.averageRate = (prev <= 0.0d) ? rate : (this.smoothing * rate) + ((1.0d - this.smoothing) * prev);
+		updateProbability();
+	}
+
+	private void updateProbability() {
+		double avg = this.averageRate;
+		int target = getTargetRate();
+		if ((avg <= target) || (avg <= 0.0d)) {
+			this.probability = 1.0d;
+		} else {
+			this.probability = target / avg;
+		}
+	}
+
+	public String toString() {
+		return getName() + "[target=" + getTargetRate() + ";average="
+				+ getAverageRate() + ";probability=" + getProbability() + "]";
+	}
+}
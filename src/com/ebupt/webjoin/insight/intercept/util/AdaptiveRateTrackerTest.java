@@ -0,0 +1,60 @@
+package com.ebupt.webjoin.insight.intercept.util;
+
+import junit.framework.TestCase;
+
+public class AdaptiveRateTrackerTest extends TestCase {
+	private static final int TARGET_RATE = 50;
+	private static final int BASE_LOAD = 200;
+
+	ManualClock clock = new ManualClock();
+	AdaptiveRateTracker tracker = new AdaptiveRateTracker("test", TARGET_RATE, clock, AdaptiveRateTracker.DEFAULT_SMOOTHING);
+
+	public void testConvergesAfterLoadStep() {
+		runSeconds(BASE_LOAD, 10);
+		assertWithinTolerance(TARGET_RATE, runSeconds(BASE_LOAD, 5) / 5.0d);
+
+		// 10x load step
+		runSeconds(10 * BASE_LOAD, 10);
+		assertWithinTolerance(TARGET_RATE, runSeconds(10 * BASE_LOAD, 5) / 5.0d);
+	}
+
+	public void testLoadBelowTargetIsFullyAllowed() {
+		runSeconds(TARGET_RATE / 2, 3);
+		assertEquals(5 * (TARGET_RATE / 2), runSeconds(TARGET_RATE / 2, 5));
+		assertEquals(1.0d, tracker.getProbability(), 0.0d);
+	}
+
+	public void testNonPositiveTargetDisallowsAll() {
+		tracker.setTargetRate(0);
+		assertEquals(0, runSeconds(BASE_LOAD, 2));
+	}
+
+	private static void assertWithinTolerance(double expected, double actual) {
+		assertTrue("Achieved rate " + actual + " not within 5% of " + expected,
+				Math.abs(actual - expected) <= (expected * 0.05d));
+	}
+
+	// offers values evenly spread over each second and returns the number of allowed ones
+	private int runSeconds(int perSecond, int seconds) {
+		int allowed = 0;
+		for (int s = 0; s < seconds; s++) {
+			long start = clock.now;
+			for (int i = 0; i < perSecond; i++) {
+				clock.now = start + (i * AdaptiveRateTracker.WINDOW_MILLIS) / perSecond;
+				if (tracker.isValueProcessingAllowed()) {
+					allowed++;
+				}
+			}
+			clock.now = start + AdaptiveRateTracker.WINDOW_MILLIS;
+		}
+		return allowed;
+	}
+
+	static class ManualClock implements AdaptiveRateTracker.Clock {
+		long now = 1000000L;
+
+		public long currentTimeMillis() {
+			return now;
+		}
+	}
+}
@@ -1,16 +1,23 @@
 package com.ebupt.webjoin.insight.intercept.util;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allows processing of a given percentage of the values. The decision is
+ * derived from a single 64-bit sequence number: the <code>n</code>-th value
+ * (since the ratio was last set) is allowed iff <code>ceil(n * ratio / 100)</code>
+ * grows with it, so after <code>n</code> values exactly that many have been
+ * processed - without updating a second shared counter on each decision.
+ */
 public class PercentageTracker {
-	private final AtomicInteger totalValues = new AtomicInteger(0);
-	private final AtomicInteger processedValues = new AtomicInteger(0);
-	private volatile int ratio;
+	private final AtomicLong totalValues = new AtomicLong(0L);
+	// replaced whenever the ratio changes so processed values remain exact
+	private volatile Epoch epoch;
 	private final String name;
 
 	public PercentageTracker(String id, int threshold) {
 		this.name = id;
-		this.ratio = threshold;
+		this.epoch = new Epoch(threshold, 0L, 0L);
 	}
 
 	public PercentageTracker(String id) {
@@ -22,32 +29,35 @@ public class PercentageTracker {
 	}
 
 	public int getTrackedRatio() {
-		return this.ratio;
+		return this.epoch.ratio;
 	}
 
-	public void setTrackedRatio(int threshold) {
-		this.ratio = threshold;
+	public synchronized void setTrackedRatio(int threshold) {
+		long totalCount = this.totalValues.get();
+		this.epoch = new Epoch(threshold, totalCount, this.epoch.getProcessedValues(totalCount));
 	}
 
-	public int getTotalValues() {
+	public long getTotalValues() {
 		return this.totalValues.get();
 	}
 
-	public int getProcessedValues() {
-		return this.processedValues.get();
+	public long getProcessedValues() {
+		return this.epoch.getProcessedValues(getTotalValues());
 	}
 
-	void setTotalValues(int totalCount) {
+	synchronized void setTotalValues(long totalCount) {
+		long numProcessed = getProcessedValues();
 		this.totalValues.set(totalCount);
+		this.epoch = new Epoch(getTrackedRatio(), totalCount, Math.min(numProcessed, totalCount));
 	}
 
-	void setProcessedValues(int numProcessed) {
-		this.processedValues.set(numProcessed);
+	synchronized void setProcessedValues(long numProcessed) {
+		this.epoch = new Epoch(getTrackedRatio(), getTotalValues(), numProcessed);
 	}
 
-	public void reset() {
-		this.totalValues.set(0);
-		this.processedValues.set(0);
+	public synchronized void reset() {
+		this.totalValues.set(0L);
+		this.epoch = new Epoch(getTrackedRatio(), 0L, 0L);
 	}
 
 	public int getCurrentRatio() {
@@ -60,17 +70,18 @@ public class PercentageTracker {
 			return 100;
 		}
 
-		int totalCount = getTotalValues();
-		int numProcessed = getProcessedValues();
-		if ((totalCount <= 0) || (numProcessed <= 0)) {
+		long totalCount = getTotalValues();
+		long numProcessed = getProcessedValues();
+		if ((totalCount <= 0L) || (numProcessed <= 0L)) {
 			return 0;
 		}
 
-		return (int) (numProcessed * 100L / totalCount);
+		return (int) ((numProcessed * 100.0d) / totalCount);
 	}
 
 	public boolean isValueProcessingAllowed() {
-		int threshold = getTrackedRatio();
+		Epoch current = this.epoch;
+		int threshold = current.ratio;
 		if (threshold <= 0) {
 			return false;
 		}
@@ -79,32 +90,17 @@ public class PercentageTracker {
 			return true;
 		}
 
-		int totalCount = this.totalValues.incrementAndGet();
-		int numProcessed = this.processedValues.get();
-
-		if ((totalCount <= 0) || (numProcessed < 0)
-				|| (numProcessed > totalCount)) {
-			return restart();
-		}
-
-		int percentage = (int) (numProcessed * 100L / totalCount);
-
-		if (percentage >= threshold) {
-			return false;
+		long index = this.totalValues.incrementAndGet() - current.totalBase;
+		if (index <= 0L) {
+			return true;	// the epoch was replaced concurrently
 		}
 
-		if ((numProcessed = this.processedValues.incrementAndGet()) < 0) {
-			this.processedValues.set(0);
-		}
-
-		return true;
+		return processedCount(index, threshold) > processedCount(index - 1L, threshold);
 	}
 
-	private boolean restart() {
-		this.totalValues.set(1);
-		this.processedValues.set(0);
-
-		return true;
+	// ceil(count * ratio / 100) - exact while count * ratio fits in 64 bits
+	static long processedCount(long count, int ratio) {
+		return ((count * ratio) + 99L) / 100L;
 	}
 
 	public String toString() {
@@ -112,4 +108,33 @@ public class PercentageTracker {
 				+ getTotalValues() + ";tracked=" + getTrackedRatio()
 				+ ";ratio=" + getCurrentRatio() + "]";
 	}
-}
\ No newline at end of file
+
+	private static final class Epoch {
+		final int ratio;
+		final long totalBase;
+		final long processedBase;
+
+		Epoch(int threshold, long totalCount, long numProcessed) {
+			ratio = threshold;
+			totalBase = totalCount;
+			processedBase = numProcessed;
+		}
+
+		long getProcessedValues(long totalCount) {
+			long count = totalCount - totalBase;
+			if (count <= 0L) {
+				return processedBase;
+			}
+
+			if (ratio <= 0) {
+				return processedBase;
+			}
+
+			if (ratio >= 100) {
+				return processedBase + count;
+			}
+
+			return processedBase + processedCount(count, ratio);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.ebupt.webjoin.insight.intercept.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+public class PercentageTrackerTest extends TestCase {
+	private static final int RATIO = 30;
+	private static final int NUM_VALUES = 100000;
+
+	PercentageTracker tracker = new PercentageTracker("test", RATIO);
+
+	public void testExactRatio() {
+		int allowed = countAllowed(NUM_VALUES);
+		assertEquals(NUM_VALUES * RATIO / 100, allowed);
+		assertEquals(allowed, tracker.getProcessedValues());
+		assertEquals(NUM_VALUES, tracker.getTotalValues());
+		assertEquals(RATIO, tracker.getCurrentRatio());
+	}
+
+	public void testFirstValueAllowed() {
+		assertTrue(tracker.isValueProcessingAllowed());
+	}
+
+	public void testNoIntOverflow() {
+		assertCountsAcross(Integer.MAX_VALUE - (NUM_VALUES / 2));
+	}
+
+	public void testLongRunCounters() {
+		assertCountsAcross(1L << 50);
+	}
+
+	public void testRatioChangeKeepsProcessedCount() {
+		countAllowed(1000);
+		long processed = tracker.getProcessedValues();
+		tracker.setTrackedRatio(50);
+		assertEquals(processed, tracker.getProcessedValues());
+
+		assertEquals(500, countAllowed(1000));
+		assertEquals(processed + 500, tracker.getProcessedValues());
+	}
+
+	public void testConcurrentDecisions() throws Exception {
+		final int numThreads = 8;
+		final AtomicLong allowed = new AtomicLong(0L);
+		final CountDownLatch done = new CountDownLatch(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			new Thread("tracker-" + t) {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < NUM_VALUES; i++) {
+							if (tracker.isValueProcessingAllowed()) {
+								allowed.incrementAndGet();
+							}
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		assertTrue("Threads did not finish", done.await(60L, TimeUnit.SECONDS));
+		assertEquals((long) numThreads * NUM_VALUES * RATIO / 100, allowed.get());
+		assertEquals(allowed.get(), tracker.getProcessedValues());
+	}
+
+	private void assertCountsAcross(long start) {
+		tracker.setTotalValues(start);
+		long processedBefore = tracker.getProcessedValues();
+		assertEquals(NUM_VALUES * RATIO / 100, countAllowed(NUM_VALUES));
+		assertEquals(start + NUM_VALUES, tracker.getTotalValues());
+		assertEquals(processedBefore + (NUM_VALUES * RATIO / 100), tracker.getProcessedValues());
+	}
+
+	private int countAllowed(int numValues) {
+		int allowed = 0;
+		for (int i = 0; i < numValues; i++) {
+			if (tracker.isValueProcessingAllowed()) {
+				allowed++;
+			}
+		}
+		return allowed;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ebupt.webjoin.insight.plugin.jdbc;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+/**
+ * Caches the URL of each {@link Connection} so that it is retrieved via
+ * {@link Connection#getMetaData()} (which for some drivers/pools creates a
+ * new object or even makes a round-trip) at most once per connection.
+ * The connections are weakly referenced and compared by identity.
+ */
+class ConnectionUrlCache {
+    private static final ConnectionUrlCache INSTANCE=new ConnectionUrlCache();
+
+    private final WeakKeyHashMap<Connection,String> urls=new WeakKeyHashMap<Connection,String>();
+
+    ConnectionUrlCache () {
+        super();
+    }
+
+    static ConnectionUrlCache getInstance () {
+        return INSTANCE;
+    }
+
+    /**
+     * @param conn The {@link Connection}
+     * @return The connection URL - <code>null</code> if not available
+     * @throws SQLException If failed to retrieve the URL from the connection
+     * meta-data (first time only)
+     */
+    String getURL (Connection conn) throws SQLException {
+        if (conn == null) {
+            return null;
+        }
+
+        String  url=urls.get(conn);
+        if (url != null) {
+            return url;
+        }
+
+        DatabaseMetaData    metaData=conn.getMetaData();
+        if ((url=(metaData == null) ? null : metaData.getURL()) != null) {
+            urls.put(conn, url);
+        }
+        return url;
+    }
+
+    /**
+     * Seeds the cache - e.g., with the URL used to create the connection
+     * @param conn The {@link Connection}
+     * @param url The connection URL - ignored if <code>null</code>
+     */
+    void setURL (Connection conn, String url) {
+        if ((conn != null) && (url != null)) {
+            urls.put(conn, url);
+        }
+    }
+
+    int size () {
+        return urls.size();
+    }
+}
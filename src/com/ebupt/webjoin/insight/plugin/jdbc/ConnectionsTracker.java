@@ -19,11 +19,16 @@ import java.io.Serializable;
 import java.sql.Connection;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,7 +46,10 @@ import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingsUpdateListen
 /**
  * A rather simplistic LRU cache that tracks {@link Connection}-s created
  * by a JDBC {@link java.sql.Driver} so that we can mark the {@link Connection#close()}
- * operation with the URL that was to open it.
+ * operation with the URL that was to open it. In order not to serialize all
+ * the pool threads on a single lock, the LRU is approximated using the
+ * CLOCK (a.k.a. &quot;second chance&quot;) algorithm on top of a
+ * {@link ConcurrentHashMap}.
  */
 class ConnectionsTracker implements CollectionSettingsUpdateListener {
     /**
@@ -57,17 +65,19 @@ class ConnectionsTracker implements CollectionSettingsUpdateListener {
     private volatile Level  logLevel=DEFAULT_LEVEL;
     /**
      * The tracked connections {@link Map} - key={@link CacheKey}
-     * (consists of the class name and identity hash) and value=the connection
-     * URL used when connection was opened 
+     * (consists of the class name and identity hash) and value=the
+     * {@link TrackedEntry} holding the connection URL used when connection
+     * was opened 
      */
-    private final Map<CacheKey,String>    trackedMap=
-            Collections.synchronizedMap(new LinkedHashMap<CacheKey, String>() {
-                    private static final long serialVersionUID = 1L;
-                    @Override
-                    protected boolean removeEldestEntry(Map.Entry<CacheKey,String> entry) {
-                        return size() > getMaxCapacity();
-                    }
-            });
+    private final ConcurrentMap<CacheKey,TrackedEntry>    trackedMap=
+            new ConcurrentHashMap<CacheKey,TrackedEntry>();
+    /**
+     * The eviction candidates in insertion order - may contain stale entries
+     * of connections that are no longer tracked
+     */
+    private final Queue<TrackedEntry>   clockQueue=new ConcurrentLinkedQueue<TrackedEntry>();
+    // ConcurrentLinkedQueue#size() is not a constant time operation
+    private final AtomicInteger queueSize=new AtomicInteger(0);
     private final Logger    logger=Logger.getLogger(getClass().getName());
     private static final ConnectionsTracker INSTANCE=new ConnectionsTracker();
 
@@ -108,8 +118,13 @@ class ConnectionsTracker implements CollectionSettingsUpdateListener {
      * if none
      */
     String startTracking (Connection conn, String url) {
-        CacheKey    key=new CacheKey(conn);
-        String      prev=trackedMap.put(key, (url == null) ? "" : url);
+        CacheKey        key=new CacheKey(conn);
+        TrackedEntry    entry=new TrackedEntry(key, (url == null) ? "" : url);
+        TrackedEntry    prevEntry=trackedMap.put(key, entry);
+        String          prev=(prevEntry == null) ? null : prevEntry.url;
+        // evict before queuing the new entry so that it is not the CLOCK victim
+        evictIfNeeded();
+        enqueue(entry);
         if ((logLevel != null) && (!Level.OFF.equals(logLevel)) && logger.isLoggable(logLevel)) {
             logger.log(logLevel, "startTracking(" + key + ")[" + url + "] => " + prev);
         }
@@ -122,8 +137,9 @@ class ConnectionsTracker implements CollectionSettingsUpdateListener {
      * was called - <code>null</code> if connection not tracked
      */
     String stopTracking (Connection conn) {
-        CacheKey    key=new CacheKey(conn);
-        String      url=trackedMap.remove(key);
+        CacheKey        key=new CacheKey(conn);
+        TrackedEntry    entry=trackedMap.remove(key);
+        String          url=(entry == null) ? null : entry.url;
         if ((logLevel != null) && (!Level.OFF.equals(logLevel)) && logger.isLoggable(logLevel)) {
             logger.log(logLevel, "stopTracking(" + key + ") => " + url);
         }
@@ -136,14 +152,28 @@ class ConnectionsTracker implements CollectionSettingsUpdateListener {
      * @return The URL of the tracked connection - <code>null</code> if not tracked
      */
     String checkTrackingState (Connection conn) {
-        return trackedMap.get(new CacheKey(conn));
+        TrackedEntry    entry=trackedMap.get(new CacheKey(conn));
+        if (entry == null) {
+            return null;
+        }
+
+        // avoid writing a shared flag on every access
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.url;
     }
 
     Set<String> getTrackedURLs () {
         if (trackedMap.isEmpty()) {
             return Collections.emptySet();
         }
-        return new TreeSet<String>(trackedMap.values());
+
+        Set<String> urls=new TreeSet<String>();
+        for (TrackedEntry entry : trackedMap.values()) {
+            urls.add(entry.url);
+        }
+        return urls;
     }
 
     int getNumTrackedConnections () {
@@ -160,25 +190,81 @@ class ConnectionsTracker implements CollectionSettingsUpdateListener {
         }
 
         Map<String,Collection<CacheKey>>    result=new TreeMap<String, Collection<CacheKey>>();
-        synchronized(trackedMap) {
-            for (Map.Entry<CacheKey,String> ce : trackedMap.entrySet()) {
-                CacheKey                key=ce.getKey();
-                String                  url=ce.getValue();
-                Collection<CacheKey>    keyList=result.get(url);
-                if (keyList == null) {
-                    keyList = new TreeSet<CacheKey>();
-                    result.put(url, keyList);
-                }
-                
-                keyList.add(key);
+        for (TrackedEntry entry : trackedMap.values()) {
+            CacheKey                key=entry.key;
+            String                  url=entry.url;
+            Collection<CacheKey>    keyList=result.get(url);
+            if (keyList == null) {
+                keyList = new TreeSet<CacheKey>();
+                result.put(url, keyList);
             }
+            
+            keyList.add(key);
         }
         
         return result;
     }
 
+    // for testing
+    int getQueueSize () {
+        return queueSize.get();
+    }
+
     void clear () {
         trackedMap.clear();
+        clockQueue.clear();
+        queueSize.set(0);
+    }
+
+    private void enqueue (TrackedEntry entry) {
+        clockQueue.offer(entry);
+        /*
+         * Closed connections leave stale entries in the queue that are
+         * discarded only when evicting - so if no eviction takes place for
+         * a while we need to purge them explicitly
+         */
+        if (queueSize.incrementAndGet() > (2 * getMaxCapacity())) {
+            for (Iterator<TrackedEntry> iter=clockQueue.iterator(); iter.hasNext(); ) {
+                if (isStale(iter.next())) {
+                    iter.remove();
+                    queueSize.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /*
+     * Evicts the first entry (in insertion order) that was not referenced
+     * since it was last inspected - referenced entries get a second chance
+     */
+    private void evictIfNeeded () {
+        while (trackedMap.size() > getMaxCapacity()) {
+            TrackedEntry    entry=clockQueue.poll();
+            if (entry == null) {
+                return;
+            }
+            queueSize.decrementAndGet();
+
+            if (isStale(entry)) {
+                continue;
+            }
+
+            if (entry.referenced) {
+                entry.referenced = false;
+                clockQueue.offer(entry);
+                queueSize.incrementAndGet();
+                continue;
+            }
+
+            if (trackedMap.remove(entry.key, entry)
+             && (logLevel != null) && (!Level.OFF.equals(logLevel)) && logger.isLoggable(logLevel)) {
+                logger.log(logLevel, "evicted(" + entry.key + ") => " + entry.url);
+            }
+        }
+    }
+
+    private boolean isStale (TrackedEntry entry) {
+        return trackedMap.get(entry.key) != entry;
     }
 
     public void incrementalUpdate(CollectionSettingName name, Serializable value) {
@@ -218,6 +304,18 @@ class ConnectionsTracker implements CollectionSettingsUpdateListener {
         return INSTANCE;
     }
     
+    static final class TrackedEntry {
+        final CacheKey  key;
+        final String    url;
+        // set when the connection is accessed - cleared by the CLOCK hand
+        volatile boolean    referenced;
+
+        TrackedEntry (CacheKey k, String u) {
+            key = k;
+            url = u;
+        }
+    }
+
     static class CacheKey implements Serializable, Comparable<CacheKey> {
         private static final long serialVersionUID = -470721146773085523L;
         private final String    name;
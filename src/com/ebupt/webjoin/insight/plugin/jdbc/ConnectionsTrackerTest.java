@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ebupt.webjoin.insight.plugin.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class ConnectionsTrackerTest extends TestCase {
+    private static final int NUM_THREADS = 8;
+    private static final int NUM_CONNECTIONS = 1000;
+
+    private final ConnectionsTracker tracker = ConnectionsTracker.getInstance();
+    private int orgCapacity;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        orgCapacity = tracker.getMaxCapacity();
+        tracker.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setMaxCapacity(orgCapacity);
+        tracker.clear();
+        super.tearDown();
+    }
+
+    public void testCapacityBoundUnderConcurrentTracking() throws Exception {
+        final int capacity = 16;
+        setMaxCapacity(capacity);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(NUM_THREADS);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final String url = "jdbc:test:" + t;
+            new Thread("tracker-" + t) {
+                @Override
+                public void run() {
+                    try {
+                        // keep the connections reachable so that their identities remain unique
+                        List<Connection> connections = createConnections(NUM_CONNECTIONS);
+                        start.await();
+                        for (Connection conn : connections) {
+                            tracker.startTracking(conn, url);
+                            tracker.checkTrackingState(conn);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        start.countDown();
+        assertTrue("Threads did not finish", done.await(60L, TimeUnit.SECONDS));
+        assertNull("Unexpected tracking failure", failure.get());
+
+        int numTracked = tracker.getNumTrackedConnections();
+        assertTrue("Capacity exceeded: " + numTracked, numTracked <= capacity);
+        assertTrue("Stale entries not purged: " + tracker.getQueueSize(), tracker.getQueueSize() <= (2 * capacity) + NUM_THREADS);
+    }
+
+    public void testReferencedEntrySurvivesEviction() {
+        setMaxCapacity(3);
+
+        List<Connection> connections = createConnections(4);
+        for (int index = 0; index < 3; index++) {
+            tracker.startTracking(connections.get(index), "jdbc:test:" + index);
+        }
+
+        assertEquals("jdbc:test:0", tracker.checkTrackingState(connections.get(0)));
+        tracker.startTracking(connections.get(3), "jdbc:test:3");
+
+        assertEquals(3, tracker.getNumTrackedConnections());
+        assertEquals("Referenced entry evicted", "jdbc:test:0", tracker.checkTrackingState(connections.get(0)));
+        assertNull("Unreferenced entry not evicted", tracker.checkTrackingState(connections.get(1)));
+        assertEquals("jdbc:test:3", tracker.checkTrackingState(connections.get(3)));
+    }
+
+    public void testEvictionTerminatesWhenAllReferenced() {
+        setMaxCapacity(3);
+
+        List<Connection> connections = createConnections(4);
+        for (int index = 0; index < 3; index++) {
+            Connection conn = connections.get(index);
+            tracker.startTracking(conn, "jdbc:test:" + index);
+            tracker.checkTrackingState(conn);
+        }
+
+        tracker.startTracking(connections.get(3), "jdbc:test:3");
+
+        // once all the second chances are used the oldest entry is the victim
+        assertEquals(3, tracker.getNumTrackedConnections());
+        assertNull("Oldest entry not evicted", tracker.checkTrackingState(connections.get(0)));
+        assertEquals("New entry evicted", "jdbc:test:3", tracker.checkTrackingState(connections.get(3)));
+    }
+
+    public void testStaleEntriesPurgedAfterStopTracking() {
+        int capacity = 5;
+        setMaxCapacity(capacity);
+
+        for (Connection conn : createConnections(100 * capacity)) {
+            assertNull(tracker.startTracking(conn, "jdbc:test"));
+            assertEquals("jdbc:test", tracker.stopTracking(conn));
+            assertTrue("Stale entries not purged: " + tracker.getQueueSize(), tracker.getQueueSize() <= 2 * capacity);
+        }
+
+        assertEquals(0, tracker.getNumTrackedConnections());
+    }
+
+    private void setMaxCapacity(int capacity) {
+        tracker.incrementalUpdate(ConnectionsTracker.MAX_TRACKED_CONNECTIONS_SETTING, Integer.valueOf(capacity));
+        assertEquals(capacity, tracker.getMaxCapacity());
+    }
+
+    static List<Connection> createConnections(int numConnections) {
+        InvocationHandler handler = new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        };
+
+        List<Connection> connections = new ArrayList<Connection>(numConnections);
+        for (int index = 0; index < numConnections; index++) {
+            connections.add((Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler));
+        }
+        return connections;
+    }
+}
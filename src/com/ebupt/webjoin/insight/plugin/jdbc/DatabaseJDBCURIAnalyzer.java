@@ -21,6 +21,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.ebupt.webjoin.insight.color.ColorManager;
 import com.ebupt.webjoin.insight.intercept.operation.Operation;
@@ -62,6 +64,19 @@ import com.springsource.insight.util.StringUtil;*/
  * Additional parsers are very welcome.
  */
 public abstract class DatabaseJDBCURIAnalyzer extends AbstractExternalResourceAnalyzer {
+	/**
+	 * Maximum number of distinct connection strings whose parsing results are cached
+	 */
+	public static final int	DEFAULT_MAX_CACHED_URLS=256;
+	private static final int	maxCachedURLs=
+			Integer.getInteger("insight.jdbc.url.cache.size", DEFAULT_MAX_CACHED_URLS).intValue();
+	/*
+	 * An application typically uses a handful of distinct URLs, so the
+	 * (parser and MD5 based) results are computed once per connection string
+	 */
+	private static final ConcurrentMap<String,ParsedConnectionString>	parsedURLs=
+			new ConcurrentHashMap<String,ParsedConnectionString>();
+
 	protected DatabaseJDBCURIAnalyzer(OperationType type) {
 	    super(type);
 	}
@@ -100,24 +115,16 @@ public abstract class DatabaseJDBCURIAnalyzer extends AbstractExternalResourceAn
 	}
 
 	static List<ExternalResourceDescriptor> getFallbackDescriptor(Frame frame, String connectionString) {
-		String workingConnectionString = connectionString.replaceFirst("jdbc:", "");
-		int indexOfFirstColon = workingConnectionString.indexOf(':');
-		if (indexOfFirstColon <= 0) {
+		ParsedConnectionString	parsed=getParsedConnectionString(connectionString);
+		String jdbcScheme = parsed.getScheme();
+		if (jdbcScheme == null) {
 			return Collections.emptyList();
 		}
 
-		String jdbcScheme = workingConnectionString.substring(0, indexOfFirstColon);
-		String jdbcHash = MD5NameGenerator.getName(connectionString);
+		String jdbcHash = parsed.getHash();
+		String host = parsed.getHost();
+		int port = parsed.getPort();
 
-		String host = null;
-		int port = -1;
-		// Try to parse the string as a real uri
-		URI uri = extractURI(workingConnectionString);
-		if (uri != null) {
-			host = uri.getHost();
-			port = uri.getPort();			
-		}
-		
 		ColorManager	colorManager=ColorManager.getInstance();
 		Operation		op=frame.getOperation();
 		String 			color=colorManager.getColor(op);
@@ -129,11 +136,14 @@ public abstract class DatabaseJDBCURIAnalyzer extends AbstractExternalResourceAn
 	}
 
 	static List<ExternalResourceDescriptor> getParserRecognizedDescriptors(Frame frame, String connectionString) {		
-		Collection<? extends JdbcUrlMetaData> urlMetaDataList = DatabaseType.parse(connectionString);
+		ParsedConnectionString	parsed=getParsedConnectionString(connectionString);
+		Collection<? extends JdbcUrlMetaData> urlMetaDataList = parsed.getMetaData();
 		if (ListUtil.size(urlMetaDataList) <= 0) {
 			return Collections.emptyList();
 		}
 
+		String jdbcHash = parsed.getHash();
+
 		List<ExternalResourceDescriptor> externalResourceDescriptors = new ArrayList<ExternalResourceDescriptor>(urlMetaDataList.size());
 		int 			instance = 1;
 		ColorManager	colorManager=ColorManager.getInstance();
@@ -144,7 +154,6 @@ public abstract class DatabaseJDBCURIAnalyzer extends AbstractExternalResourceAn
 			String vendor = urlMetaData.getVendorName();
 			String host = urlMetaData.getHost();
 			int port = urlMetaData.getPort();
-			String jdbcHash = MD5NameGenerator.getName(connectionString);
                 
 			ExternalResourceDescriptor descriptor=new ExternalResourceDescriptor(frame, 
 																				 vendor + ":" + instance + ":" + jdbcHash,
@@ -162,6 +171,95 @@ public abstract class DatabaseJDBCURIAnalyzer extends AbstractExternalResourceAn
 		return externalResourceDescriptors;
 	}
 	
+	static ParsedConnectionString getParsedConnectionString(String connectionString) {
+		ParsedConnectionString	parsed=parsedURLs.get(connectionString);
+		if (parsed != null) {
+			return parsed;
+		}
+
+		parsed = new ParsedConnectionString(connectionString);
+		if (parsedURLs.size() >= maxCachedURLs) {
+			parsedURLs.clear();	// unlikely - e.g., URLs with embedded session data
+		}
+
+		ParsedConnectionString	prev=parsedURLs.putIfAbsent(connectionString, parsed);
+		return (prev == null) ? parsed : prev;
+	}
+
+	/**
+	 * @return Maximum number of distinct connection strings whose parsing
+	 * results are cached
+	 */
+	public static int getMaxCachedURLs() {
+		return maxCachedURLs;
+	}
+
+	// for testing
+	static int getCachedURLsCount() {
+		return parsedURLs.size();
+	}
+
+	/**
+	 * Holds the (immutable) results of parsing a connection string
+	 */
+	static final class ParsedConnectionString {
+		private final List<JdbcUrlMetaData>	metaData;
+		private final String	hash;
+		// fallback values - used if no parser recognizes the string
+		// (null scheme if the string does not even have one)
+		private final String	scheme, host;
+		private final int	port;
+
+		ParsedConnectionString(String connectionString) {
+			List<JdbcUrlMetaData>	urlMetaDataList=DatabaseType.parse(connectionString);
+			metaData = (ListUtil.size(urlMetaDataList) <= 0)
+					? Collections.<JdbcUrlMetaData>emptyList()
+					: Collections.unmodifiableList(new ArrayList<JdbcUrlMetaData>(urlMetaDataList))
+					;
+			hash = MD5NameGenerator.getName(connectionString);
+
+			String workingConnectionString = connectionString.replaceFirst("jdbc:", "");
+			int indexOfFirstColon = workingConnectionString.indexOf(':');
+			if (indexOfFirstColon <= 0) {
+				scheme = null;
+				host = null;
+				port = -1;
+				return;
+			}
+
+			scheme = workingConnectionString.substring(0, indexOfFirstColon);
+			// Try to parse the string as a real uri
+			URI uri = extractURI(workingConnectionString);
+			if (uri != null) {
+				host = uri.getHost();
+				port = uri.getPort();
+			} else {
+				host = null;
+				port = -1;
+			}
+		}
+
+		List<JdbcUrlMetaData> getMetaData() {
+			return metaData;
+		}
+
+		String getHash() {
+			return hash;
+		}
+
+		String getScheme() {
+			return scheme;
+		}
+
+		String getHost() {
+			return host;
+		}
+
+		int getPort() {
+			return port;
+		}
+	}
+
 	/*
 	 * Try to pull a uri out of the jdbc url. If no uri is to be found, return null
 	 */
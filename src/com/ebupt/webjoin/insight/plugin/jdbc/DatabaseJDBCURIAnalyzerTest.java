@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ebupt.webjoin.insight.plugin.jdbc;
+
+import junit.framework.TestCase;
+
+import com.ebupt.webjoin.insight.plugin.jdbc.DatabaseJDBCURIAnalyzer.ParsedConnectionString;
+
+public class DatabaseJDBCURIAnalyzerTest extends TestCase {
+    public void testParsedConnectionStringReused() {
+        String url = "jdbc:mysql://localhost:3306/test";
+        ParsedConnectionString parsed = DatabaseJDBCURIAnalyzer.getParsedConnectionString(url);
+        assertSame(parsed, DatabaseJDBCURIAnalyzer.getParsedConnectionString(url));
+        // equal but not identical strings (e.g., read from a configuration) are also reused
+        assertSame(parsed, DatabaseJDBCURIAnalyzer.getParsedConnectionString(new String(url)));
+        assertEquals("mysql", parsed.getScheme());
+    }
+
+    public void testCacheIsBounded() {
+        int maxURLs = DatabaseJDBCURIAnalyzer.getMaxCachedURLs();
+        for (int index = 0; index < 3 * maxURLs; index++) {
+            DatabaseJDBCURIAnalyzer.getParsedConnectionString("jdbc:hsqldb:mem:db" + index);
+            int count = DatabaseJDBCURIAnalyzer.getCachedURLsCount();
+            assertTrue("Cache exceeded its size: " + count, count <= maxURLs);
+        }
+        assertTrue("Nothing cached", DatabaseJDBCURIAnalyzer.getCachedURLsCount() > 0);
+    }
+}
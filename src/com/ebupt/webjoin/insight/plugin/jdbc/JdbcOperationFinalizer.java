@@ -15,7 +15,10 @@
  */
 package com.ebupt.webjoin.insight.plugin.jdbc;
 
+import java.io.Serializable;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -24,86 +27,278 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.ebupt.webjoin.insight.intercept.operation.Operation;
 import com.ebupt.webjoin.insight.intercept.operation.OperationFinalizer;
 import com.ebupt.webjoin.insight.intercept.operation.OperationList;
 import com.ebupt.webjoin.insight.intercept.operation.OperationMap;
+import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingName;
+import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingsRegistry;
+import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingsUpdateListener;
 import com.ebupt.webjoin.insight.util.ListUtil;
 import com.ebupt.webjoin.insight.util.StringFormatterUtils;
 import com.ebupt.webjoin.insight.util.StringUtil;
 
  
 
-public class JdbcOperationFinalizer implements OperationFinalizer {
+public class JdbcOperationFinalizer implements OperationFinalizer, CollectionSettingsUpdateListener {
     private static final JdbcOperationFinalizer INSTANCE = new JdbcOperationFinalizer();
-    
+
+    /**
+     * Key of the {@link StatementParameters} attached to the operation
+     * as a finalizer object
+     */
+    static final String PARAMS_KEY="jdbcStatementParameters";
+
+    public static final String BATCH_SIZE="batchSize";
+    public static final String BATCH_PARAMS="batchParams";
+    public static final String UPDATE_COUNTS="updateCounts";
+
     /**
-     * The keys in these maps should be strongly referenced in the frame stack; so they should not
-     * be removed until the frame leaves the station.
+     * Default number of parameter sets recorded for a batch - the rest are
+     * only counted
      */
-    private static final WeakKeyHashMap<Operation, Map<String, Object>> mappedParamStorage = new WeakKeyHashMap<Operation, Map<String, Object>>();
-    private static final WeakKeyHashMap<Operation, List<Object>> indexedParamStorage = new WeakKeyHashMap<Operation, List<Object>>();
+    public static final int DEFAULT_MAX_BATCH_PARAMS=5;
+    private static volatile int maxBatchParams=
+            Integer.getInteger("insight.jdbc.batch.params.sampled", DEFAULT_MAX_BATCH_PARAMS).intValue();
+
+    /**
+     * Default minimum execution duration (msec.) for which the parameter
+     * values are recorded - non-positive means always record them
+     */
+    public static final long DEFAULT_PARAMS_THRESHOLD=-1L;
+    private static volatile long paramsThreshold=
+            Long.getLong("insight.jdbc.params.threshold.millis", DEFAULT_PARAMS_THRESHOLD).longValue();
+
+    protected static final CollectionSettingName    MAX_BATCH_PARAMS_SETTING =
+            new CollectionSettingName("batch.params.sampled", "jdbc", "Number of parameter sets recorded for a batch (default=" + DEFAULT_MAX_BATCH_PARAMS + ")");
+    protected static final CollectionSettingName    PARAMS_THRESHOLD_SETTING =
+            new CollectionSettingName("params.threshold.millis", "jdbc", "Minimum execution duration (msec.) for recording the parameters - non-positive means always (default=" + DEFAULT_PARAMS_THRESHOLD + ")");
+
+    // register a collection setting update listener
+    static {
+        CollectionSettingsRegistry registry = CollectionSettingsRegistry.getInstance();
+        registry.addListener(INSTANCE);
+    }
+
+    private final Logger    logger=Logger.getLogger(getClass().getName());
 
     public JdbcOperationFinalizer () {
     	super();
     }
 
+    /**
+     * Registers the finalizer along with the (initially empty) parameters
+     * of the statement. Since a statement is not used concurrently by
+     * several threads, the parameters are accessed without any locking.
+     * @param operation The statement {@link Operation}
+     */
     public static void register(Operation operation) {
-    	System.out.println("register");
-        operation.addFinalizer(INSTANCE);
+        operation.addFinalizer(INSTANCE)
+                 .addFinalizerObject(PARAMS_KEY, new StatementParameters())
+                 ;
     }
     
     public static void addParam(Operation operation, String key, Object param) {
-        synchronized (operation) {
-            Map<String, Object> params = mappedParamStorage.get(operation);
-            if (params == null) {
-                params = new HashMap<String, Object>();
-                mappedParamStorage.put(operation, params);
-            }
+        StatementParameters params = getParameters(operation);
+        if (params != null) {
             params.put(key, param);
         }
     }
     
     public static void addParam(Operation operation, int paramIndex, Object param) {
-        // JDBC indexes are 1-based, so let's adjust it to the modern world first!
-        int index=paramIndex - 1;
-        synchronized (operation) {
-            List<Object> params = indexedParamStorage.get(operation);
-            if (params == null) {
-                params = new ArrayList<Object>();
-                indexedParamStorage.put(operation, params);
-            }
-            // grow array if needed
-            while (index >= params.size()) {
-                params.add(null);
-            }
-            System.out.println("addparam: "+index+" => "+param.toString());
-            params.set(index, param);
+        StatementParameters params = getParameters(operation);
+        if (params != null) {
+            // JDBC indexes are 1-based, so let's adjust it to the modern world first!
+            params.set(paramIndex - 1, param);
         }
     }
     
+    public static int getMaxBatchParams () {
+        return maxBatchParams;
+    }
+
+    /**
+     * @return Minimum execution duration (msec.) for which the parameter
+     * values are recorded - if non-positive they are always recorded
+     */
+    public static long getParamsThreshold () {
+        return paramsThreshold;
+    }
+
+    /**
+     * Called just before the statement is executed - used to decide whether
+     * to record the parameter values if a {@link #getParamsThreshold()} is set
+     * @param operation The statement {@link Operation}
+     */
+    public static void executionStarted(Operation operation) {
+        StatementParameters params = (paramsThreshold > 0L) ? getParameters(operation) : null;
+        if (params != null) {
+            params.startNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called just after the statement has been executed (successfully or not)
+     * @param operation The statement {@link Operation}
+     */
+    public static void executionEnded(Operation operation) {
+        StatementParameters params = (paramsThreshold > 0L) ? getParameters(operation) : null;
+        if ((params != null) && (params.startNanos != 0L)) {
+            params.durationNanos = System.nanoTime() - params.startNanos;
+        }
+    }
+
+    /**
+     * Called when the current parameters are added to the batch. Only the
+     * first {@link #getMaxBatchParams()} parameter sets are recorded - the
+     * rest are only counted.
+     * @param operation The statement {@link Operation}
+     */
+    public static void addBatch(Operation operation) {
+        StatementParameters params = getParameters(operation);
+        if (params != null) {
+            params.addBatch(maxBatchParams);
+        }
+    }
+
+    /**
+     * Called when the batch has been executed
+     * @param operation The statement {@link Operation}
+     * @param updateCounts The update counts returned by the execution - may
+     * be <code>null</code> (e.g., if failed without any counts)
+     */
+    public static void executeBatch(Operation operation, int[] updateCounts) {
+        StatementParameters params = getParameters(operation);
+        if (params != null) {
+            params.getBatch().setUpdateCounts(updateCounts);
+        }
+    }
+
+    public void incrementalUpdate(CollectionSettingName name, Serializable value) {
+        if (MAX_BATCH_PARAMS_SETTING.equals(name)) {
+            int newMax=CollectionSettingsRegistry.getIntegerSettingValue(value);
+            if (newMax < 0) {
+                throw new IllegalArgumentException("Negative batch parameters count N/A: " + value);
+            }
+
+            int oldMax=maxBatchParams;
+            maxBatchParams = newMax;
+            logger.info("incrementalUpdate(" + name + ") " + oldMax + " => " + maxBatchParams);
+        } else if (PARAMS_THRESHOLD_SETTING.equals(name)) {
+            long    oldThreshold=paramsThreshold;
+            paramsThreshold = CollectionSettingsRegistry.getLongSettingValue(value);
+            logger.info("incrementalUpdate(" + name + ") " + oldThreshold + " => " + paramsThreshold);
+        } else if (logger.isLoggable(Level.FINE)) {
+            logger.fine("incrementalUpdate(" + name + ")[" + value + "] ignored");
+        }
+    }
+
+    static StatementParameters getParameters(Operation operation) {
+        return (StatementParameters) operation.getFinalizerObject(PARAMS_KEY);
+    }
+
     public void finalize(Operation operation, Map<String, Object> richObjects) {
-    	System.out.println("finalize "+operation);
         operation.label(createLabel(operation.get("sql", String.class)));
-        if (mappedParamStorage.get(operation) != null) {
-            OperationMap params = operation.createMap("params");
-            for (Entry<String, Object> entry : mappedParamStorage.get(operation).entrySet()) {
-                params.put(entry.getKey(), StringFormatterUtils.formatObjectAndTrim(entry.getValue()));
+
+        StatementParameters params = (StatementParameters) richObjects.get(PARAMS_KEY);
+        if (params != null) {
+            params.populate(operation, paramsThreshold);
+        }
+    }
+
+    /**
+     * Holds the parameters of a single statement - indexed ones are kept in
+     * an array that is grown to the maximum parameter index
+     */
+    static final class StatementParameters {
+        private Object[] indexed;
+        private int numIndexed;
+        private Map<String, Object> mapped;
+        private BatchSummary batch;
+        // execution timing - recorded only if a parameters threshold is set
+        long startNanos, durationNanos = -1L;
+
+        StatementParameters() {
+            super();
+        }
+
+        void set(int index, Object param) {
+            if (index < 0) {
+                return;
+            }
+
+            if (indexed == null) {
+                indexed = new Object[Math.max(index + 1, 8)];
+            } else if (index >= indexed.length) {
+                indexed = Arrays.copyOf(indexed, Math.max(index + 1, indexed.length * 2));
+            }
+
+            indexed[index] = param;
+            if (index >= numIndexed) {
+                numIndexed = index + 1;
+            }
+        }
+
+        void put(String key, Object param) {
+            if (mapped == null) {
+                mapped = new HashMap<String, Object>();
             }
-        } else if (indexedParamStorage.get(operation) != null) {
-            OperationList params = operation.createList("params");
-            for (Object param : indexedParamStorage.get(operation)) {
-                params.add(StringFormatterUtils.formatObjectAndTrim(param));
+            mapped.put(key, param);
+        }
+
+        BatchSummary getBatch() {
+            if (batch == null) {
+                batch = new BatchSummary();
             }
+            return batch;
         }
-        /**
-         * We know we will never need these SoftKeyEntries again, so let's
-         * remove it explicitly so they are cleaned up using traditional
-         * garbage collection.
+
+        void addBatch(int maxSampled) {
+            BatchSummary summary = getBatch();
+            if (summary.size++ < maxSampled) {
+                if (mapped != null) {
+                    summary.sampledParams.add(new HashMap<String, Object>(mapped));
+                } else if (indexed != null) {
+                    summary.sampledParams.add(Arrays.asList(Arrays.copyOf(indexed, numIndexed)));
+                } else {
+                    summary.sampledParams.add(Collections.emptyList());
+                }
+            }
+        }
+
+        /*
+         * If the execution was faster than the threshold then the (buffered)
+         * parameter references are simply dropped without being formatted
          */
-        mappedParamStorage.remove(operation);
-        indexedParamStorage.remove(operation);
+        boolean isParamsRecordingRequired(long thresholdMillis) {
+            return (thresholdMillis <= 0L)
+                || (durationNanos < 0L)    // unknown
+                || (durationNanos >= TimeUnit.MILLISECONDS.toNanos(thresholdMillis))
+                ;
+        }
+
+        void populate(Operation operation, long thresholdMillis) {
+            boolean recordParams = isParamsRecordingRequired(thresholdMillis);
+            if (batch != null) {
+                batch.populate(operation, recordParams);
+            } else if (!recordParams) {
+                return;
+            } else if (mapped != null) {
+                OperationMap params = operation.createMap("params");
+                for (Entry<String, Object> entry : mapped.entrySet()) {
+                    params.put(entry.getKey(), StringFormatterUtils.formatObjectAndTrim(entry.getValue()));
+                }
+            } else if (indexed != null) {
+                OperationList params = operation.createList("params");
+                for (int index=0; index < numIndexed; index++) {
+                    params.add(StringFormatterUtils.formatObjectAndTrim(indexed[index]));
+                }
+            }
+        }
     }
 
     private static final Collection<Map.Entry<String,String>>	stmtsList=
@@ -160,6 +355,64 @@ public class JdbcOperationFinalizer implements OperationFinalizer {
 
     private static final Set<Character> WORD_DELIMS=
         Collections.unmodifiableSet(ListUtil.asSet(Character.valueOf(' '), Character.valueOf('(')));
+    /**
+     * Summarizes a batch instead of recording each parameter set
+     */
+    static final class BatchSummary {
+        int size;
+        final List<Object> sampledParams = new ArrayList<Object>();
+        int updatedRows, successNoInfo, failed;
+        boolean executed;
+
+        BatchSummary() {
+            super();
+        }
+
+        void setUpdateCounts(int[] updateCounts) {
+            executed = true;
+            if (updateCounts == null) {
+                return;
+            }
+
+            for (int count : updateCounts) {
+                if (count >= 0) {
+                    updatedRows += count;
+                } else if (count == Statement.SUCCESS_NO_INFO) {
+                    successNoInfo++;
+                } else if (count == Statement.EXECUTE_FAILED) {
+                    failed++;
+                }
+            }
+        }
+
+        void populate(Operation operation, boolean recordParams) {
+            operation.put(BATCH_SIZE, size);
+
+            OperationList params = operation.createList(BATCH_PARAMS);
+            for (Object paramSet : recordParams ? sampledParams : Collections.<Object>emptyList()) {
+                if (paramSet instanceof Map<?,?>) {
+                    OperationMap values = params.createMap();
+                    for (Entry<?, ?> entry : ((Map<?, ?>) paramSet).entrySet()) {
+                        values.put(String.valueOf(entry.getKey()), StringFormatterUtils.formatObjectAndTrim(entry.getValue()));
+                    }
+                } else {
+                    OperationList values = params.createList();
+                    for (Object param : (List<?>) paramSet) {
+                        values.add(StringFormatterUtils.formatObjectAndTrim(param));
+                    }
+                }
+            }
+
+            if (executed) {
+                operation.createMap(UPDATE_COUNTS)
+                         .put("updatedRows", updatedRows)
+                         .put("successNoInfo", successNoInfo)
+                         .put("failed", failed)
+                         ;
+            }
+        }
+    }
+
     private static String captureWordAfter(String source, String delim) {
         if (delim.charAt(delim.length() - 1) != ' ') {
             throw new IllegalArgumentException("Last char must be a ' '");
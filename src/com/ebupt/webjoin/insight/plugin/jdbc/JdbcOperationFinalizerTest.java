@@ -0,0 +1,316 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ebupt.webjoin.insight.plugin.jdbc;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+
+import com.ebupt.webjoin.insight.application.ApplicationName;
+import com.ebupt.webjoin.insight.intercept.InterceptConfiguration;
+import com.ebupt.webjoin.insight.intercept.InterceptDispatcher;
+import com.ebupt.webjoin.insight.intercept.InterceptListener;
+import com.ebupt.webjoin.insight.intercept.TraceDispatchCallback;
+import com.ebupt.webjoin.insight.intercept.TraceInterceptListener;
+import com.ebupt.webjoin.insight.intercept.TraceInterceptListenerImpl;
+
+import com.ebupt.webjoin.insight.intercept.operation.Operation;
+import com.ebupt.webjoin.insight.intercept.operation.OperationList;
+import com.ebupt.webjoin.insight.intercept.operation.OperationMap;
+import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingName;
+import com.ebupt.webjoin.insight.intercept.plugin.CollectionSettingsRegistry;
+import com.ebupt.webjoin.insight.intercept.trace.Frame;
+import com.ebupt.webjoin.insight.intercept.trace.FrameBuilder;
+import com.ebupt.webjoin.insight.intercept.trace.Trace;
+
+public class JdbcOperationFinalizerTest extends TestCase {
+    private static final int NUM_ROWS = 100000;
+    private static final int NUM_PARAMS = 50;
+    private static final int NUM_STAGES = 4;
+    private static final int NUM_STATEMENTS = 1000;
+
+    public void testLargeBatchIsSummarized() {
+        Operation operation = createOperation("INSERT INTO t (id, name) VALUES (?, ?)");
+        for (int row = 0; row < NUM_ROWS; row++) {
+            JdbcOperationFinalizer.addParam(operation, 1, Integer.valueOf(row));
+            JdbcOperationFinalizer.addParam(operation, 2, "name" + row);
+            JdbcOperationFinalizer.addBatch(operation);
+        }
+
+        int[] updateCounts = new int[NUM_ROWS];
+        Arrays.fill(updateCounts, 1);
+        updateCounts[0] = Statement.SUCCESS_NO_INFO;
+        updateCounts[1] = Statement.EXECUTE_FAILED;
+        JdbcOperationFinalizer.executeBatch(operation, updateCounts);
+        operation.finalizeConstruction();
+
+        assertEquals("JDBC INSERT (T)", operation.getLabel());
+        assertEquals(NUM_ROWS, operation.get(JdbcOperationFinalizer.BATCH_SIZE, Integer.class).intValue());
+        assertNull("Unexpected last row parameters", operation.get("params"));
+
+        OperationList sampled = operation.get(JdbcOperationFinalizer.BATCH_PARAMS, OperationList.class);
+        assertEquals(JdbcOperationFinalizer.getMaxBatchParams(), sampled.size());
+        for (int row = 0; row < sampled.size(); row++) {
+            OperationList values = sampled.get(row, OperationList.class);
+            assertEquals(String.valueOf(row), values.get(0));
+            assertEquals("name" + row, values.get(1));
+        }
+
+        OperationMap counts = operation.get(JdbcOperationFinalizer.UPDATE_COUNTS, OperationMap.class);
+        assertEquals(Integer.valueOf(NUM_ROWS - 2), counts.get("updatedRows"));
+        assertEquals(Integer.valueOf(1), counts.get("successNoInfo"));
+        assertEquals(Integer.valueOf(1), counts.get("failed"));
+    }
+
+    public void testIndexedParameters() {
+        Operation operation = createOperation("SELECT * FROM t WHERE a = ? AND b = ? AND c = ?");
+        JdbcOperationFinalizer.addParam(operation, 3, "c");
+        JdbcOperationFinalizer.addParam(operation, 1, "a");
+        operation.finalizeConstruction();
+
+        OperationList params = operation.get("params", OperationList.class);
+        assertEquals(3, params.size());
+        assertEquals("a", params.get(0));
+        assertEquals("c", params.get(2));
+        assertNull("Parameters not released", JdbcOperationFinalizer.getParameters(operation));
+    }
+
+    public void testNamedParameters() {
+        Operation operation = createOperation("{call proc(?, ?)}");
+        JdbcOperationFinalizer.addParam(operation, "x", "1");
+        JdbcOperationFinalizer.addParam(operation, "y", "2");
+        operation.finalizeConstruction();
+
+        OperationMap params = operation.get("params", OperationMap.class);
+        assertEquals("1", params.get("x"));
+        assertEquals("2", params.get("y"));
+    }
+
+    public void testParamsRecordedOnlyForSlowExecutions() throws Exception {
+        long orgThreshold = JdbcOperationFinalizer.getParamsThreshold();
+        setCollectionSetting(JdbcOperationFinalizer.PARAMS_THRESHOLD_SETTING, Long.valueOf(50L));
+        assertEquals(50L, JdbcOperationFinalizer.getParamsThreshold());
+        try {
+            Operation fast = executeWithLatency("fast", 0L);
+            assertNull("Unexpected fast execution parameters", fast.get("params"));
+
+            Operation slow = executeWithLatency("slow", 100L);
+            OperationList params = slow.get("params", OperationList.class);
+            assertNotNull("Missing slow execution parameters", params);
+            assertEquals("slow", params.get(0));
+        } finally {
+            setCollectionSetting(JdbcOperationFinalizer.PARAMS_THRESHOLD_SETTING, Long.valueOf(orgThreshold));
+        }
+    }
+
+    public void testBatchParamsSampleUpdatedBySetting() {
+        int orgMax = JdbcOperationFinalizer.getMaxBatchParams();
+        setCollectionSetting(JdbcOperationFinalizer.MAX_BATCH_PARAMS_SETTING, "2");
+        try {
+            assertEquals(2, JdbcOperationFinalizer.getMaxBatchParams());
+
+            Operation operation = createOperation("INSERT INTO t (id) VALUES (?)");
+            for (int row = 0; row < 10; row++) {
+                JdbcOperationFinalizer.addParam(operation, 1, Integer.valueOf(row));
+                JdbcOperationFinalizer.addBatch(operation);
+            }
+            operation.finalizeConstruction();
+
+            assertEquals(10, operation.get(JdbcOperationFinalizer.BATCH_SIZE, Integer.class).intValue());
+            assertEquals(2, operation.get(JdbcOperationFinalizer.BATCH_PARAMS, OperationList.class).size());
+        } finally {
+            setCollectionSetting(JdbcOperationFinalizer.MAX_BATCH_PARAMS_SETTING, Integer.valueOf(orgMax));
+        }
+    }
+
+    public void testUnregisteredOperationIgnored() {
+        Operation operation = new Operation().put("sql", "SELECT 1");
+        JdbcOperationFinalizer.addParam(operation, 1, "a");
+        JdbcOperationFinalizer.addBatch(operation);
+        assertNull(JdbcOperationFinalizer.getParameters(operation));
+    }
+
+    /*
+     * A statement may be used by several threads one after the other (e.g.,
+     * a pooled connection) - each stage binds its share of the parameters and
+     * hands the statement over to the next one via a queue (which provides the
+     * happens-before edge), and the last stage finalizes it.
+     */
+    public void testStatementHandedBetweenThreads() throws Exception {
+        List<BlockingQueue<Operation>> queues = new ArrayList<BlockingQueue<Operation>>(NUM_STAGES + 1);
+        for (int q = 0; q <= NUM_STAGES; q++) {
+            queues.add(new ArrayBlockingQueue<Operation>(16));
+        }
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> stages = new ArrayList<Thread>(NUM_STAGES);
+        for (int s = 0; s < NUM_STAGES; s++) {
+            final int stage = s;
+            final BlockingQueue<Operation> input = queues.get(s);
+            final BlockingQueue<Operation> output = queues.get(s + 1);
+            Thread thread = new Thread("stage-" + s) {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < NUM_STATEMENTS; i++) {
+                            Operation operation = input.take();
+                            for (int index = stage + 1; index <= NUM_PARAMS; index += NUM_STAGES) {
+                                JdbcOperationFinalizer.addParam(operation, index, Integer.valueOf(index));
+                            }
+                            if (stage == NUM_STAGES - 1) {
+                                operation.finalizeConstruction();
+                            }
+                            output.put(operation);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+            stages.add(thread);
+        }
+
+        BlockingQueue<Operation> first = queues.get(0);
+        BlockingQueue<Operation> last = queues.get(NUM_STAGES);
+        for (int i = 0; i < NUM_STATEMENTS; i++) {
+            first.put(createOperation("INSERT INTO t VALUES (...)"));
+
+            Operation operation = last.poll(10L, TimeUnit.SECONDS);
+            assertNotNull("Statement #" + i + " not handed back: " + failure.get(), operation);
+
+            OperationList params = operation.get("params", OperationList.class);
+            assertEquals("Mismatched #" + i + " parameters count", NUM_PARAMS, params.size());
+            for (int index = 0; index < NUM_PARAMS; index++) {
+                assertEquals("Mismatched #" + i + " parameter value", String.valueOf(index + 1), params.get(index));
+            }
+        }
+
+        for (Thread thread : stages) {
+            thread.join(TimeUnit.SECONDS.toMillis(10L));
+        }
+        assertNull("Unexpected stage failure", failure.get());
+    }
+
+    // mimics the sequence of the prepared statement collection aspect advices
+    private static Operation executeWithLatency(Object param, long latency) throws Exception {
+        PreparedStatement stmt = createStubStatement(latency);
+        Operation operation = createOperation("SELECT * FROM t WHERE x = ?");
+        stmt.setObject(1, param);
+        JdbcOperationFinalizer.addParam(operation, 1, param);
+        JdbcOperationFinalizer.executionStarted(operation);
+        try {
+            stmt.executeQuery();
+        } finally {
+            JdbcOperationFinalizer.executionEnded(operation);
+        }
+        operation.finalizeConstruction();
+        return operation;
+    }
+
+    private static PreparedStatement createStubStatement(final long latency) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().startsWith("execute") && (latency > 0L)) {
+                            Thread.sleep(latency);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /*
+     * Dispatches the root frame through the same path used for the collected
+     * traces - i.e., synchronously on the calling (application) thread - to
+     * a listener that renders all the operations properties
+     */
+    static Trace dispatchTrace(Frame root) {
+        Map<String, Object> hints = new HashMap<String, Object>();
+        hints.put(FrameBuilder.HINT_APPNAME, ApplicationName.valueOf("test"));
+
+        InterceptConfiguration config = InterceptConfiguration.getInstance();
+        InterceptDispatcher dispatcher = config.getDispatcher();
+        List<InterceptListener> listeners = dispatcher.getListeners();
+        for (InterceptListener l : listeners) {
+            dispatcher.unregister(l);
+        }
+
+        RenderingTraceListener listener = new RenderingTraceListener();
+        dispatcher.register(listener);
+        try {
+            new TraceDispatchCallback(config).exitRootFrame(root, hints);
+        } finally {
+            dispatcher.unregister(listener);
+            for (InterceptListener l : listeners) {
+                dispatcher.register(l);
+            }
+        }
+
+        assertNotNull("Trace not dispatched", listener.trace);
+        return listener.trace;
+    }
+
+    static class RenderingTraceListener implements TraceInterceptListener {
+        private final TraceInterceptListenerImpl renderer = new TraceInterceptListenerImpl();
+        Trace trace;
+
+        public void handleTraceDispatch(Trace t) {
+            trace = t;
+            try {
+                render(t.getRootFrame());
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void render(Frame frame) throws JSONException {
+            renderer.frameDes(frame.getOperation());
+            for (Frame child : frame.getChildren()) {
+                render(child);
+            }
+        }
+    }
+
+    private static void setCollectionSetting(CollectionSettingName name, Serializable value) {
+        CollectionSettingsRegistry.getInstance().set(name, value);
+    }
+
+    static Operation createOperation(String sql) {
+        Operation operation = new Operation().put("sql", sql);
+        JdbcOperationFinalizer.register(operation);
+        return operation;
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ebupt.webjoin.insight.plugin.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.ebupt.webjoin.insight.intercept.operation.Operation;
+import com.ebupt.webjoin.insight.intercept.operation.OperationList;
+import com.ebupt.webjoin.insight.intercept.trace.Frame;
+import com.ebupt.webjoin.insight.intercept.trace.Trace;
+import com.ebupt.webjoin.insight.intercept.trace.TraceAnalyzer;
+import com.ebupt.webjoin.insight.plugin.jdbc.SqlNormalizer.NormalizedSql;
+import com.ebupt.webjoin.insight.util.StringUtil;
+
+/**
+ * Detects the &quot;N+1&quot; queries pattern - i.e., sibling JDBC frames
+ * that execute the same statement (differing only in the literal/bound
+ * values) many times. Siblings are grouped by their normalized SQL
+ * fingerprint and each group that reaches the {@link #getMinRepetitions()}
+ * threshold is recorded in the parent frame operation under
+ * {@link #REPEATED_QUERIES} along with its count and summed duration.
+ */
+public class JdbcRepeatedQueriesAnalyzer implements TraceAnalyzer {
+    public static final String  REPEATED_QUERIES="repeatedQueries";
+    public static final String  REPETITIONS="repetitions";
+    public static final String  TOTAL_DURATION="totalDuration";
+
+    /**
+     * Default minimum number of sibling executions of the same statement
+     * that are reported
+     */
+    public static final int DEFAULT_MIN_REPETITIONS=10;
+
+    /**
+     * Minimum number of sibling executions of the same statement that are
+     * reported when traces are dispatched - values below 2 disable the analysis
+     */
+    public static final int MIN_REPETITIONS=
+            Integer.getInteger("insight.jdbc.repeated.queries.threshold", DEFAULT_MIN_REPETITIONS).intValue();
+
+    private static final JdbcRepeatedQueriesAnalyzer   INSTANCE=
+            (MIN_REPETITIONS > 1) ? new JdbcRepeatedQueriesAnalyzer(MIN_REPETITIONS) : null;
+
+    private final int   minRepetitions;
+
+    public JdbcRepeatedQueriesAnalyzer (int repetitions) {
+        if (repetitions <= 1) {
+            throw new IllegalArgumentException("Repetitions threshold must be above 1: " + repetitions);
+        }
+        minRepetitions = repetitions;
+    }
+
+    /**
+     * @return The analyzer configured via {@link #MIN_REPETITIONS} -
+     * <code>null</code> if the analysis is disabled
+     */
+    public static JdbcRepeatedQueriesAnalyzer getInstance () {
+        return INSTANCE;
+    }
+
+    public int getMinRepetitions () {
+        return minRepetitions;
+    }
+
+    public void analyzeTrace (Trace trace) {
+        locateRepeatedQueries(trace);
+    }
+
+    /**
+     * Locates the repeated queries in the trace and marks them in their
+     * parent frames operations
+     * @param trace The {@link Trace} to analyze
+     * @return A {@link List} of all the located {@link RepeatedQuery}-s
+     * (empty if none)
+     */
+    public List<RepeatedQuery> locateRepeatedQueries (Trace trace) {
+        Frame   root=(trace == null) ? null : trace.getRootFrame();
+        if (root == null) {
+            return Collections.emptyList();
+        }
+
+        List<RepeatedQuery>         result=null;
+        Map<Long,RepeatedQuery>     groups=new LinkedHashMap<Long,RepeatedQuery>();
+        // NOTE: traversal is iterative since frames stacks may be deep
+        LinkedList<Frame>           pending=new LinkedList<Frame>();
+        for (pending.add(root); !pending.isEmpty(); ) {
+            Frame       parent=pending.removeFirst();
+            List<Frame> children=parent.getChildren();
+            if (children.size() < minRepetitions) {
+                pending.addAll(children);
+                continue;
+            }
+
+            for (Frame child : children) {
+                pending.add(child);
+                addToGroup(groups, child);
+            }
+
+            List<RepeatedQuery> repeated=markRepeatedQueries(parent, groups.values());
+            groups.clear();
+            if (repeated.isEmpty()) {
+                continue;
+            }
+
+            if (result == null) {
+                result = new ArrayList<RepeatedQuery>();
+            }
+            result.addAll(repeated);
+        }
+
+        if (result == null) {
+            return Collections.emptyList();
+        } else {
+            return result;
+        }
+    }
+
+    List<RepeatedQuery> markRepeatedQueries (Frame parent, Iterable<RepeatedQuery> groups) {
+        List<RepeatedQuery> repeated=null;
+        for (RepeatedQuery group : groups) {
+            if (group.getRepetitions() < minRepetitions) {
+                continue;
+            }
+
+            if (repeated == null) {
+                repeated = new ArrayList<RepeatedQuery>();
+            }
+            repeated.add(group);
+        }
+
+        if (repeated == null) {
+            return Collections.emptyList();
+        }
+
+        Operation   op=parent.getOperation();
+        op.remove(REPEATED_QUERIES);   // in case re-analyzed
+        OperationList   list=op.createList(REPEATED_QUERIES);
+        for (RepeatedQuery group : repeated) {
+            list.createMap()
+                .put(SqlNormalizer.NORMALIZED_SQL, group.getNormalizedSql())
+                .put(SqlNormalizer.SQL_FINGERPRINT, group.getFingerprint())
+                .put(REPETITIONS, group.getRepetitions())
+                .put(TOTAL_DURATION, group.getTotalDuration())
+                ;
+        }
+
+        return repeated;
+    }
+
+    static void addToGroup (Map<Long,RepeatedQuery> groups, Frame frame) {
+        Operation   op=frame.getOperation();
+        if ((op == null) || (!JdbcOperationExternalResourceAnalyzer.TYPE.equals(op.getType()))) {
+            return;
+        }
+
+        Long    fingerprint=op.get(SqlNormalizer.SQL_FINGERPRINT, Long.class);
+        String  normalizedSql=op.get(SqlNormalizer.NORMALIZED_SQL, String.class);
+        if ((fingerprint == null) || (normalizedSql == null)) {
+            // e.g., collected before the SQL was normalized
+            NormalizedSql   sql=SqlNormalizer.normalizeSql(op.get("sql", String.class));
+            if (sql == null) {
+                return;
+            }
+            fingerprint = Long.valueOf(sql.getFingerprint());
+            normalizedSql = sql.getText();
+        }
+
+        if (StringUtil.isEmpty(normalizedSql)) {
+            return;
+        }
+
+        RepeatedQuery   group=groups.get(fingerprint);
+        if (group == null) {
+            group = new RepeatedQuery(normalizedSql, fingerprint.longValue());
+            groups.put(fingerprint, group);
+        }
+        group.add(frame);
+    }
+
+    /**
+     * Represents a group of sibling frames executing the same statement
+     */
+    public static final class RepeatedQuery {
+        private final String    normalizedSql;
+        private final long      fingerprint;
+        private int     repetitions;
+        private long    totalNanos;
+
+        RepeatedQuery (String sql, long hash) {
+            normalizedSql = sql;
+            fingerprint = hash;
+        }
+
+        void add (Frame frame) {
+            repetitions++;
+            totalNanos += frame.getRange().getDuration();
+        }
+
+        public String getNormalizedSql () {
+            return normalizedSql;
+        }
+
+        public long getFingerprint () {
+            return fingerprint;
+        }
+
+        public int getRepetitions () {
+            return repetitions;
+        }
+
+        /**
+         * @return Summed duration (msec.) of the repeated executions
+         */
+        public long getTotalDuration () {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos);
+        }
+
+        @Override
+        public String toString () {
+            return normalizedSql + "[repetitions=" + repetitions + ";duration=" + getTotalDuration() + "]";
+        }
+    }
+}
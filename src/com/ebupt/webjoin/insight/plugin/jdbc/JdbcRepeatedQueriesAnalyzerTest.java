@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ebupt.webjoin.insight.plugin.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.ebupt.webjoin.insight.application.ApplicationName;
+import com.ebupt.webjoin.insight.intercept.operation.Operation;
+import com.ebupt.webjoin.insight.intercept.operation.OperationList;
+import com.ebupt.webjoin.insight.intercept.operation.OperationMap;
+import com.ebupt.webjoin.insight.intercept.operation.OperationType;
+import com.ebupt.webjoin.insight.intercept.trace.Frame;
+import com.ebupt.webjoin.insight.intercept.trace.FrameId;
+import com.ebupt.webjoin.insight.intercept.trace.SimpleFrame;
+import com.ebupt.webjoin.insight.intercept.trace.Trace;
+import com.ebupt.webjoin.insight.intercept.trace.TraceAnalyzer;
+import com.ebupt.webjoin.insight.intercept.trace.TraceAnalyzersRegistry;
+import com.ebupt.webjoin.insight.intercept.trace.TraceId;
+import com.ebupt.webjoin.insight.intercept.util.time.TimeRange;
+import com.ebupt.webjoin.insight.plugin.jdbc.JdbcRepeatedQueriesAnalyzer.RepeatedQuery;
+
+public class JdbcRepeatedQueriesAnalyzerTest extends TestCase {
+    private static final int NUM_QUERIES = 500;
+    private static final long QUERY_NANOS = TimeUnit.MILLISECONDS.toNanos(2L);
+
+    private final JdbcRepeatedQueriesAnalyzer analyzer = new JdbcRepeatedQueriesAnalyzer(JdbcRepeatedQueriesAnalyzer.DEFAULT_MIN_REPETITIONS);
+    private long frameId;
+    private long nanos = TimeUnit.SECONDS.toNanos(1L);
+
+    public void testRepeatedQueriesFlagged() {
+        List<Frame> children = new ArrayList<Frame>();
+        Operation rootOp = new Operation().type(OperationType.HTTP).label("GET /orders");
+        Frame root = new SimpleFrame(FrameId.valueOf(frameId++), null, rootOp, new TimeRange(0L, Long.MAX_VALUE), children);
+        for (int index = 0; index < NUM_QUERIES; index++) {
+            // the N+1 queries - half of them not normalized at collection
+            String sql = "SELECT * FROM items WHERE order_id = " + index;
+            children.add(createJdbcFrame(root, sql, (index % 2) == 0));
+        }
+        children.add(createJdbcFrame(root, "SELECT * FROM orders WHERE customer_id = 7", true));
+
+        List<RepeatedQuery> repeated = analyzer.locateRepeatedQueries(createTrace(root));
+        assertEquals(1, repeated.size());
+
+        RepeatedQuery query = repeated.get(0);
+        assertEquals("SELECT * FROM items WHERE order_id = ?", query.getNormalizedSql());
+        assertEquals(NUM_QUERIES, query.getRepetitions());
+        assertEquals(TimeUnit.NANOSECONDS.toMillis(NUM_QUERIES * QUERY_NANOS), query.getTotalDuration());
+
+        OperationList marked = rootOp.get(JdbcRepeatedQueriesAnalyzer.REPEATED_QUERIES, OperationList.class);
+        assertNotNull("Repeated queries not marked", marked);
+        assertEquals(1, marked.size());
+
+        OperationMap group = marked.get(0, OperationMap.class);
+        assertEquals(query.getNormalizedSql(), group.get(SqlNormalizer.NORMALIZED_SQL));
+        assertEquals(Integer.valueOf(NUM_QUERIES), group.get(JdbcRepeatedQueriesAnalyzer.REPETITIONS));
+        assertEquals(Long.valueOf(query.getTotalDuration()), group.get(JdbcRepeatedQueriesAnalyzer.TOTAL_DURATION));
+    }
+
+    public void testNestedBelowThresholdIgnored() {
+        List<Frame> children = new ArrayList<Frame>();
+        List<Frame> nested = new ArrayList<Frame>();
+        Operation rootOp = new Operation().type(OperationType.HTTP).label("GET /orders");
+        Frame root = new SimpleFrame(FrameId.valueOf(frameId++), null, rootOp, new TimeRange(0L, Long.MAX_VALUE), children);
+        Operation parentOp = new Operation().type(OperationType.METHOD).label("loadItems");
+        Frame parent = new SimpleFrame(FrameId.valueOf(frameId++), root, parentOp, new TimeRange(1L, Long.MAX_VALUE - 1L), nested);
+        children.add(parent);
+        for (int index = 0; index < analyzer.getMinRepetitions() - 1; index++) {
+            nested.add(createJdbcFrame(parent, "SELECT * FROM items WHERE order_id = " + index, true));
+        }
+
+        assertTrue(analyzer.locateRepeatedQueries(createTrace(root)).isEmpty());
+        assertNull(parentOp.get(JdbcRepeatedQueriesAnalyzer.REPEATED_QUERIES));
+    }
+
+    public void testRepeatedQueriesMarkedWhenDispatched() {
+        JdbcRepeatedQueriesAnalyzer configured = JdbcRepeatedQueriesAnalyzer.getInstance();
+        assertNotNull("Analysis disabled by default", configured);
+
+        List<Frame> children = new ArrayList<Frame>();
+        Operation rootOp = new Operation().type(OperationType.HTTP).label("GET /orders");
+        Frame root = new SimpleFrame(FrameId.valueOf(frameId++), null, rootOp, new TimeRange(0L, Long.MAX_VALUE), children);
+        for (int index = 0; index < configured.getMinRepetitions(); index++) {
+            children.add(createJdbcFrame(root, "SELECT * FROM items WHERE order_id = " + index, true));
+        }
+
+        TraceAnalyzersRegistry registry = TraceAnalyzersRegistry.getInstance();
+        registry.registerAnalyzer(configured);
+        Trace trace;
+        try {
+            trace = JdbcOperationFinalizerTest.dispatchTrace(root);
+        } finally {
+            registry.unregisterAnalyzer(configured);
+        }
+
+        OperationList marked = trace.getRootFrame().getOperation().get(JdbcRepeatedQueriesAnalyzer.REPEATED_QUERIES, OperationList.class);
+        assertNotNull("Repeated queries not marked before dispatch", marked);
+        assertEquals(1, marked.size());
+
+        OperationMap group = marked.get(0, OperationMap.class);
+        assertEquals("SELECT * FROM items WHERE order_id = ?", group.get(SqlNormalizer.NORMALIZED_SQL));
+        assertEquals(Integer.valueOf(configured.getMinRepetitions()), group.get(JdbcRepeatedQueriesAnalyzer.REPETITIONS));
+    }
+
+    public void testAnalyzerContributedByPlugin() {
+        TraceAnalyzer[] analyzers = new JdbcRuntimePluginDescriptor().getTraceAnalyzers();
+        assertNotNull("No analyzers contributed", analyzers);
+        assertEquals(1, analyzers.length);
+        assertSame(JdbcRepeatedQueriesAnalyzer.getInstance(), analyzers[0]);
+    }
+
+    private Frame createJdbcFrame(Frame parent, String sql, boolean normalized) {
+        Operation op = new Operation().type(JdbcOperationExternalResourceAnalyzer.TYPE).put("sql", sql);
+        if (normalized) {
+            SqlNormalizer.populate(op, SqlNormalizer.normalizeSql(sql));
+        }
+
+        long start = nanos;
+        nanos += QUERY_NANOS;
+        return new SimpleFrame(FrameId.valueOf(frameId++), parent, op, new TimeRange(start, nanos), new ArrayList<Frame>());
+    }
+
+    private static Trace createTrace(Frame root) {
+        return Trace.newInstance(ApplicationName.valueOf("test"), TraceId.valueOf(), root);
+    }
+}
@@ -17,6 +17,7 @@ package com.ebupt.webjoin.insight.plugin.jdbc;
 
 import com.ebupt.webjoin.insight.intercept.endpoint.EndPointAnalyzer;
 import com.ebupt.webjoin.insight.intercept.plugin.PluginRuntimeDescriptor;
+import com.ebupt.webjoin.insight.intercept.trace.TraceAnalyzer;
 
 
 
@@ -28,6 +29,12 @@ public class JdbcRuntimePluginDescriptor extends PluginRuntimeDescriptor {
         return null;
     }
 
+    @Override
+    public TraceAnalyzer[] getTraceAnalyzers() {
+        JdbcRepeatedQueriesAnalyzer analyzer = JdbcRepeatedQueriesAnalyzer.getInstance();
+        return (analyzer == null) ? null : new TraceAnalyzer[] { analyzer };
+    }
+
     @Override
     public String getPluginName() {
         return PLUGIN_NAME;
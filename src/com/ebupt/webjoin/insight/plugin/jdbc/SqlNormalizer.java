@@ -0,0 +1,366 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ebupt.webjoin.insight.plugin.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ebupt.webjoin.insight.intercept.operation.Operation;
+
+/**
+ * Normalizes SQL statements so that statements which differ only in their
+ * literal values can be grouped together: literals are replaced by
+ * <code>?</code>, IN lists are collapsed to <code>(?)</code>, comments are
+ * removed and white space is compacted. Each normalized statement also has
+ * a 64-bit fingerprint.
+ *
+ * Since prepared statements are usually created from the same (constant)
+ * SQL string, normalized strings are cached by their identity. The cache is
+ * bounded - it is simply cleared when full since an application typically
+ * uses a limited number of distinct statements.
+ */
+public class SqlNormalizer {
+    public static final String  NORMALIZED_SQL="normalizedSql";
+    public static final String  SQL_FINGERPRINT="sqlFingerprint";
+
+    public static final int DEFAULT_CACHE_SIZE=256;
+
+    private static final SqlNormalizer  INSTANCE=new SqlNormalizer(
+            Integer.getInteger("insight.jdbc.normalized.cache.size", DEFAULT_CACHE_SIZE).intValue());
+
+    private static final long   FNV_OFFSET_BASIS=0xcbf29ce484222325L;
+    private static final long   FNV_PRIME=0x100000001b3L;
+
+    private final int   maxCacheSize;
+    private final ConcurrentMap<IdentityKey,NormalizedSql>  cache=
+            new ConcurrentHashMap<IdentityKey,NormalizedSql>();
+
+    public SqlNormalizer (int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Negative cache size: " + cacheSize);
+        }
+
+        maxCacheSize = cacheSize;
+    }
+
+    public static SqlNormalizer getInstance () {
+        return INSTANCE;
+    }
+
+    /**
+     * @param sql The original SQL - usually of a prepared statement
+     * @return The (possibly cached) {@link NormalizedSql} - <code>null</code>
+     * if no SQL provided
+     */
+    public NormalizedSql getNormalizedSql (String sql) {
+        if (sql == null) {
+            return null;
+        }
+
+        IdentityKey     key=new IdentityKey(sql);
+        NormalizedSql   result=cache.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        result = normalizeSql(sql);
+        if (maxCacheSize <= 0) {
+            return result;
+        }
+
+        if (cache.size() >= maxCacheSize) {
+            cache.clear();  // unlikely - e.g., dynamically generated statements
+        }
+
+        NormalizedSql   prev=cache.putIfAbsent(key, result);
+        return (prev == null) ? result : prev;
+    }
+
+    public int getCacheSize () {
+        return cache.size();
+    }
+
+    /**
+     * @param op The {@link Operation} to populate
+     * @param sql The normalized SQL - ignored if <code>null</code>
+     * @return The same operation
+     */
+    public static Operation populate (Operation op, NormalizedSql sql) {
+        if (sql != null) {
+            op.put(NORMALIZED_SQL, sql.getText())
+              .put(SQL_FINGERPRINT, sql.getFingerprint())
+              ;
+        }
+        return op;
+    }
+
+    /**
+     * Normalizes the SQL without using the cache
+     * @param sql The original SQL
+     * @return The {@link NormalizedSql} - <code>null</code> if no SQL provided
+     */
+    public static NormalizedSql normalizeSql (String sql) {
+        if (sql == null) {
+            return null;
+        }
+
+        String  text=normalize(sql);
+        return new NormalizedSql(text, fingerprint(text));
+    }
+
+    /**
+     * @param text The text to hash
+     * @return The 64-bit FNV-1a hash of the text characters
+     */
+    public static long fingerprint (CharSequence text) {
+        long    hash=FNV_OFFSET_BASIS;
+        for (int index=0; index < text.length(); index++) {
+            char    c=text.charAt(index);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Normalizes the SQL in a single pass
+     * @param sql The original SQL
+     * @return The normalized SQL text
+     */
+    public static String normalize (String sql) {
+        int             len=sql.length();
+        StringBuilder   sb=new StringBuilder(len);
+        boolean         pendingSpace=false;
+        // start of the current IN list in the output - negative if none
+        int             inListStart=-1, inListDepth=0;
+        boolean         inListLiteralsOnly=false;
+
+        for (int index=0; index < len; ) {
+            char    c=sql.charAt(index);
+
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                index++;
+                continue;
+            }
+
+            if ((c == '-') && (index + 1 < len) && (sql.charAt(index + 1) == '-')) {
+                index = skipLineComment(sql, index + 2);
+                pendingSpace = true;
+                continue;
+            }
+
+            if ((c == '/') && (index + 1 < len) && (sql.charAt(index + 1) == '*')) {
+                index = skipBlockComment(sql, index + 2);
+                pendingSpace = true;
+                continue;
+            }
+
+            int     tokenEnd;
+            boolean literal=false;
+            if (c == '\'') {
+                tokenEnd = skipQuoted(sql, index + 1, '\'');
+                literal = true;
+            } else if ((c == '"') || (c == '`')) {
+                tokenEnd = skipQuoted(sql, index + 1, c);
+            } else if (c == '[') {
+                tokenEnd = skipQuoted(sql, index + 1, ']');
+            } else if (isNumberStart(sql, index)) {
+                tokenEnd = skipNumber(sql, index);
+                literal = true;
+            } else if (isIdentifierChar(c)) {
+                for (tokenEnd=index + 1; (tokenEnd < len) && isIdentifierChar(sql.charAt(tokenEnd)); tokenEnd++) {
+                    // just skip it
+                }
+            } else {
+                tokenEnd = index + 1;
+            }
+
+            // compact white space - none after '(' or before ')' and ','
+            if (pendingSpace && (sb.length() > 0) && (c != ')') && (c != ',') && (sb.charAt(sb.length() - 1) != '(')) {
+                sb.append(' ');
+            }
+            pendingSpace = (c == ',');
+
+            if (c == '(') {
+                if (inListStart >= 0) {
+                    inListDepth++;
+                    inListLiteralsOnly = false;
+                } else if (endsWithKeyword(sb, "IN")) {
+                    if (sb.charAt(sb.length() - 1) != ' ') {
+                        sb.append(' ');
+                    }
+                    inListStart = sb.length();
+                    inListDepth = 1;
+                    inListLiteralsOnly = true;
+                }
+                sb.append(c);
+            } else if ((c == ')') && (inListStart >= 0)) {
+                if (--inListDepth <= 0) {
+                    if (inListLiteralsOnly) {
+                        sb.setLength(inListStart);
+                        sb.append("(?");
+                    }
+                    inListStart = -1;
+                }
+                sb.append(c);
+            } else if (literal) {
+                sb.append('?');
+            } else {
+                if ((inListStart >= 0) && (c != '?') && (c != ',')) {
+                    inListLiteralsOnly = false;
+                }
+                sb.append(sql, index, tokenEnd);
+            }
+
+            index = tokenEnd;
+        }
+
+        return sb.toString();
+    }
+
+    private static int skipLineComment (String sql, int startIndex) {
+        int index=startIndex;
+        for (int len=sql.length(); (index < len) && (sql.charAt(index) != '\n'); index++) {
+            // just skip it
+        }
+        return index;
+    }
+
+    private static int skipBlockComment (String sql, int startIndex) {
+        int endIndex=sql.indexOf("*/", startIndex);
+        return (endIndex < 0) ? sql.length() : endIndex + 2;
+    }
+
+    // returns the index after the closing quote - doubled quotes are escapes
+    private static int skipQuoted (String sql, int startIndex, char quote) {
+        int len=sql.length();
+        for (int index=startIndex; index < len; index++) {
+            if (sql.charAt(index) != quote) {
+                continue;
+            }
+
+            if ((index + 1 < len) && (sql.charAt(index + 1) == quote)) {
+                index++;    // escaped quote
+                continue;
+            }
+
+            return index + 1;
+        }
+
+        return len; // unterminated
+    }
+
+    private static boolean isNumberStart (String sql, int index) {
+        char    c=sql.charAt(index);
+        if ((c < '0') || (c > '9')) {
+            if ((c != '.') || (index + 1 >= sql.length())) {
+                return false;
+            }
+            char    next=sql.charAt(index + 1);
+            if ((next < '0') || (next > '9')) {
+                return false;
+            }
+        }
+
+        // digits that are part of an identifier (e.g., t1.col2) are not literals
+        return (index == 0) || (!isIdentifierChar(sql.charAt(index - 1)));
+    }
+
+    private static int skipNumber (String sql, int startIndex) {
+        int len=sql.length(), index=startIndex;
+        for ( ; index < len; index++) {
+            char    c=sql.charAt(index);
+            if ((c == 'e') || (c == 'E')) {
+                if ((index + 1 < len) && ((sql.charAt(index + 1) == '+') || (sql.charAt(index + 1) == '-'))) {
+                    index++;
+                }
+            } else if ((c != '.') && (!isIdentifierChar(c))) {   // also covers hex values
+                break;
+            }
+        }
+        return index;
+    }
+
+    private static boolean isIdentifierChar (char c) {
+        return Character.isLetterOrDigit(c) || (c == '_') || (c == '$') || (c == '#') || (c == '@');
+    }
+
+    private static boolean endsWithKeyword (CharSequence sb, String keyword) {
+        int len=sb.length(), kwdLen=keyword.length();
+        // skip the space that may precede the parenthesis
+        if ((len > 0) && (sb.charAt(len - 1) == ' ')) {
+            len--;
+        }
+
+        int start=len - kwdLen;
+        if (start < 0) {
+            return false;
+        }
+        if ((start > 0) && isIdentifierChar(sb.charAt(start - 1))) {
+            return false;
+        }
+
+        for (int index=0; index < kwdLen; index++) {
+            if (Character.toUpperCase(sb.charAt(start + index)) != keyword.charAt(index)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public static final class NormalizedSql {
+        private final String    text;
+        private final long      fingerprint;
+
+        NormalizedSql (String normalizedText, long hash) {
+            text = normalizedText;
+            fingerprint = hash;
+        }
+
+        public String getText () {
+            return text;
+        }
+
+        public long getFingerprint () {
+            return fingerprint;
+        }
+
+        @Override
+        public String toString () {
+            return text + "[" + Long.toHexString(fingerprint) + "]";
+        }
+    }
+
+    private static final class IdentityKey {
+        private final String    value;
+
+        IdentityKey (String s) {
+            value = s;
+        }
+
+        @Override
+        public int hashCode () {
+            return System.identityHashCode(value);
+        }
+
+        @Override
+        public boolean equals (Object obj) {
+            return (obj instanceof IdentityKey) && (((IdentityKey) obj).value == value);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2009-2011 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ebupt.webjoin.insight.plugin.jdbc;
+
+import junit.framework.TestCase;
+
+import com.ebupt.webjoin.insight.plugin.jdbc.SqlNormalizer.NormalizedSql;
+
+public class SqlNormalizerTest extends TestCase {
+    public void testStringLiterals() {
+        assertNormalized("SELECT * FROM users WHERE name = ?",
+                         "SELECT * FROM users WHERE name = 'O''Brien'");
+    }
+
+    public void testNumericLiterals() {
+        assertNormalized("SELECT * FROM t WHERE a = ? AND b > ? AND c < ? AND d = ?",
+                         "SELECT * FROM t WHERE a = 17 AND b > 3.14 AND c < 1e-5 AND d = 0x1F");
+    }
+
+    public void testDigitsInIdentifiersKept() {
+        assertNormalized("SELECT t1.col2 FROM table3 t1 WHERE t1.x = ?",
+                         "SELECT t1.col2 FROM table3 t1 WHERE t1.x = 5");
+    }
+
+    public void testQuotedIdentifiersKept() {
+        assertNormalized("SELECT \"Col 1\", `col2`, [col 3] FROM t WHERE x = ?",
+                         "SELECT \"Col 1\", `col2`, [col 3] FROM t WHERE x = 'a'");
+    }
+
+    public void testInListCollapsed() {
+        assertNormalized("SELECT * FROM t WHERE id IN (?) AND x = ?",
+                         "SELECT * FROM t WHERE id IN (1, 2, 3,4) AND x = 7");
+        assertNormalized("SELECT * FROM t WHERE id in (?)",
+                         "SELECT * FROM t WHERE id in( ?, ?, ? )");
+        assertNormalized("SELECT * FROM t WHERE id NOT IN (?)",
+                         "SELECT * FROM t WHERE id NOT IN ('a', 'b')");
+    }
+
+    public void testInSubQueryKept() {
+        assertNormalized("SELECT * FROM t WHERE id IN (SELECT id FROM u WHERE x = ?)",
+                         "SELECT * FROM t WHERE id IN (SELECT id FROM u WHERE x = 3)");
+    }
+
+    public void testCommentsAndWhiteSpace() {
+        assertNormalized("SELECT a, b FROM t WHERE x=?",
+                         "  SELECT a ,b -- the columns\n\tFROM /* table */ t\r\n WHERE x=? ");
+    }
+
+    public void testDifferentLiteralsSameFingerprint() {
+        NormalizedSql   sql1=SqlNormalizer.normalizeSql("UPDATE t SET a = 1 WHERE id IN (1, 2)");
+        NormalizedSql   sql2=SqlNormalizer.normalizeSql("UPDATE t SET a = 'x' WHERE id IN (7, 8, 9, 10)");
+        assertEquals(sql1.getText(), sql2.getText());
+        assertEquals(sql1.getFingerprint(), sql2.getFingerprint());
+
+        NormalizedSql   sql3=SqlNormalizer.normalizeSql("UPDATE t SET b = 1 WHERE id IN (1, 2)");
+        assertFalse(sql1.getFingerprint() == sql3.getFingerprint());
+    }
+
+    public void testCacheUsesIdentity() {
+        SqlNormalizer   normalizer=new SqlNormalizer(2);
+        String          sql="SELECT * FROM t WHERE x = 1";
+        NormalizedSql   result=normalizer.getNormalizedSql(sql);
+        assertSame(result, normalizer.getNormalizedSql(sql));
+        assertNotSame(result, normalizer.getNormalizedSql(new String(sql)));
+        assertEquals(2, normalizer.getCacheSize());
+    }
+
+    public void testCacheIsBounded() {
+        SqlNormalizer   normalizer=new SqlNormalizer(8);
+        for (int index=0; index < 100; index++) {
+            normalizer.getNormalizedSql("SELECT * FROM t" + index);
+            assertTrue("Cache exceeded its size: " + normalizer.getCacheSize(), normalizer.getCacheSize() <= 8);
+        }
+        assertTrue("Nothing cached", normalizer.getCacheSize() > 0);
+        assertNull(normalizer.getNormalizedSql(null));
+    }
+
+    private static void assertNormalized(String expected, String sql) {
+        assertEquals(expected, SqlNormalizer.normalize(sql));
+    }
+}
@@ -0,0 +1,98 @@
+package com.ebupt.webjoin.insight.util;
+
+/**
+ * An {@link Appendable} that stops copying characters once a maximum length
+ * has been reached. If any data was dropped, the result ends with
+ * {@link StringUtil#ELLIPSIS}.
+ */
+public class BoundedAppendable implements Appendable, CharSequence {
+    private final StringBuilder sb;
+    private final int maxLength;
+    private boolean truncated;
+
+    public BoundedAppendable(int maxLen) {
+        if (maxLen < 0) {
+            throw new IllegalArgumentException("Negative max. length: " + maxLen);
+        }
+
+        maxLength = maxLen;
+        sb = new StringBuilder(Math.min(maxLen, 128));
+    }
+
+    public BoundedAppendable append(CharSequence csq) {
+        if (csq == null) {
+            return append(StringFormatterUtils.NULL_VALUE_STRING);
+        }
+        return append(csq, 0, csq.length());
+    }
+
+    public BoundedAppendable append(CharSequence csq, int start, int end) {
+        if (csq == null) {
+            return append(StringFormatterUtils.NULL_VALUE_STRING, start, end);
+        }
+
+        int len = end - start;
+        if (len <= 0) {
+            return this;
+        }
+
+        int room = maxLength - sb.length();
+        if (room < len) {
+            truncated = true;
+            if (room <= 0) {
+                return this;
+            }
+            len = room;
+        }
+
+        sb.append(csq, start, start + len);
+        return this;
+    }
+
+    public BoundedAppendable append(char c) {
+        if (sb.length() < maxLength) {
+            sb.append(c);
+        } else {
+            truncated = true;
+        }
+        return this;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return <code>true</code> if some data was dropped
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return <code>true</code> if no more data can be appended
+     */
+    public boolean isFull() {
+        return sb.length() >= maxLength;
+    }
+
+    public int length() {
+        return sb.length();
+    }
+
+    public char charAt(int index) {
+        return sb.charAt(index);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return sb.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (truncated) {
+            return sb.toString() + StringUtil.ELLIPSIS;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,184 @@
+package com.ebupt.webjoin.insight.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders {@link Throwable} stack traces in the same layout as
+ * {@link Throwable#printStackTrace()}, but limited to a max. number of
+ * frames per throwable and a max. number of characters overall. Recently
+ * rendered traces are kept in a small LRU cache so that an &quot;exception
+ * storm&quot; of identical exceptions is rendered only once.
+ *
+ * <B>Note:</B> the cache key is the content of the throwable chain (class,
+ * message and stack elements) rather than the identity of the stack trace
+ * array, since {@link Throwable#getStackTrace()} returns a new copy on each call.
+ */
+public class StackTraceFormatter {
+    public static final int DEFAULT_MAX_DEPTH = 64;
+    public static final int DEFAULT_MAX_LENGTH = 16 * 1024;
+    public static final int DEFAULT_CACHE_SIZE = 128;
+    // protects against cyclic or extremely long causes chains
+    public static final int MAX_CAUSES = 16;
+
+    private static final StackTraceFormatter DEFAULT = new StackTraceFormatter(
+            Integer.parseInt(System.getProperty("insight.max.stacktrace.depth", String.valueOf(DEFAULT_MAX_DEPTH))),
+            Integer.parseInt(System.getProperty("insight.max.stacktrace.length", String.valueOf(DEFAULT_MAX_LENGTH))),
+            Integer.parseInt(System.getProperty("insight.stacktrace.cache.size", String.valueOf(DEFAULT_CACHE_SIZE))));
+
+    private final int maxDepth;
+    private final int maxLength;
+    private final Map<TraceKey, String> cache;
+
+    public StackTraceFormatter(int maxFrames, int maxChars, final int cacheSize) {
+        if ((maxFrames < 0) || (maxChars <= 0) || (cacheSize < 0)) {
+            throw new IllegalArgumentException("Bad limits: depth=" + maxFrames + ", length=" + maxChars + ", cache=" + cacheSize);
+        }
+
+        maxDepth = maxFrames;
+        maxLength = maxChars;
+        cache = new LinkedHashMap<TraceKey, String>(Math.max(cacheSize, 1), 0.75f, true) {
+            private static final long serialVersionUID = -6046155788633009617L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TraceKey, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public static StackTraceFormatter getDefault() {
+        return DEFAULT;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public String format(Throwable t) {
+        if (t == null) {
+            return StringFormatterUtils.NULL_VALUE_STRING;
+        }
+
+        List<Throwable> chain = getCausesChain(t);
+        StackTraceElement[][] traces = new StackTraceElement[chain.size()][];
+        for (int index = 0; index < traces.length; index++) {
+            traces[index] = chain.get(index).getStackTrace();
+        }
+
+        TraceKey key = new TraceKey(chain, traces);
+        String result;
+        synchronized (cache) {
+            result = cache.get(key);
+        }
+        if (result != null) {
+            return result;
+        }
+
+        result = render(key, traces);
+        synchronized (cache) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    private String render(TraceKey key, StackTraceElement[][] traces) {
+        BoundedAppendable sb = new BoundedAppendable(maxLength);
+        for (int index = 0; (index < traces.length) && (!sb.isFull()); index++) {
+            StackTraceElement[] trace = traces[index];
+            int framesInCommon = 0;
+            if (index > 0) {
+                sb.append("Caused by: ");
+                framesInCommon = countFramesInCommon(trace, traces[index - 1]);
+            }
+            sb.append(key.descriptions[index]).append(StringFormatterUtils.EOL);
+
+            int numFrames = trace.length - framesInCommon;
+            int numShown = Math.min(numFrames, maxDepth);
+            for (int fIndex = 0; (fIndex < numShown) && (!sb.isFull()); fIndex++) {
+                sb.append("\tat ").append(String.valueOf(trace[fIndex])).append(StringFormatterUtils.EOL);
+            }
+
+            int numOmitted = trace.length - numShown;
+            if (numOmitted > 0) {
+                sb.append("\t... ").append(String.valueOf(numOmitted)).append(" more").append(StringFormatterUtils.EOL);
+            }
+        }
+        return sb.toString();
+    }
+
+    static int countFramesInCommon(StackTraceElement[] trace, StackTraceElement[] enclosingTrace) {
+        int m = trace.length - 1, n = enclosingTrace.length - 1;
+        while ((m >= 0) && (n >= 0) && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        return trace.length - 1 - m;
+    }
+
+    static List<Throwable> getCausesChain(Throwable t) {
+        List<Throwable> chain = new ArrayList<Throwable>(4);
+        Map<Throwable, Boolean> seen = new IdentityHashMap<Throwable, Boolean>();
+        for (Throwable cur = t; (cur != null) && (chain.size() < MAX_CAUSES); cur = cur.getCause()) {
+            if (seen.put(cur, Boolean.TRUE) != null) {
+                break;  // cyclic chain
+            }
+            chain.add(cur);
+        }
+        return chain;
+    }
+
+    private static final class TraceKey {
+        final String[] descriptions;
+        final StackTraceElement[][] traces;
+        private final int hashCode;
+
+        TraceKey(List<Throwable> chain, StackTraceElement[][] stackTraces) {
+            descriptions = new String[chain.size()];
+            int hash = 1;
+            for (int index = 0; index < descriptions.length; index++) {
+                descriptions[index] = chain.get(index).toString();
+                hash = 31 * hash + descriptions[index].hashCode();
+                hash = 31 * hash + Arrays.hashCode(stackTraces[index]);
+            }
+
+            traces = stackTraces;
+            hashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if ((obj == null) || (getClass() != obj.getClass())) {
+                return false;
+            }
+
+            TraceKey other = (TraceKey) obj;
+            return (hashCode == other.hashCode)
+                && Arrays.equals(descriptions, other.descriptions)
+                && Arrays.deepEquals(traces, other.traces)
+                ;
+        }
+    }
+}
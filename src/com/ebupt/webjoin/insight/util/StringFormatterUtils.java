@@ -16,10 +16,7 @@
 
 package com.ebupt.webjoin.insight.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -40,6 +37,13 @@ public class StringFormatterUtils {
     public static final String  LOWERCASE_HEX="0123456789abcdef";
     public static final String  UPPERCASE_HEX="0123456789ABCDEF";
     public static final String  EOL=System.getProperty("line.separator", "\n");
+    public static final int DEFAULT_MAX_FIELD_LENGTH = 8 * 1024;
+    /**
+     * Max. number of characters kept when formatting a single value (e.g.,
+     * a method's return value) into an operation field
+     */
+    public static final int MAX_FIELD_LENGTH =
+            Integer.getInteger("insight.max.field.length", DEFAULT_MAX_FIELD_LENGTH).intValue();
 
     public static String formatObject(Object obj) {
         if (obj == null) {
@@ -61,6 +65,35 @@ public class StringFormatterUtils {
         return StringUtil.trimWithEllipsis(formatObject(obj), length);
     }
 
+    /**
+     * Formats the object the same way as {@link #formatObject(Object)}, but copies
+     * at most <code>maxLength</code> characters of {@link CharSequence} values
+     * (via a {@link BoundedAppendable}) instead of building their full text.
+     *
+     * @param obj The object to format
+     * @param maxLength Max. number of characters to keep - if exceeded the
+     * result ends with an ellipsis
+     * @return The formatted value
+     */
+    public static String formatObjectBounded(Object obj, int maxLength) {
+        if (obj instanceof CharSequence) {
+            CharSequence    cs=(CharSequence) obj;
+            if ((cs instanceof String) && (cs.length() <= maxLength)) {
+                return (String) cs;
+            }
+
+            if ((cs instanceof String) || (cs instanceof StringBuilder) || (cs instanceof StringBuffer)) {
+                return new BoundedAppendable(maxLength).append(cs).toString();
+            }
+        }
+
+        String  value=formatObject(obj);
+        if (value.length() <= maxLength) {
+            return value;
+        }
+        return new BoundedAppendable(maxLength).append(value).toString();
+    }
+
     public static boolean isToStringable(Object obj) {
         return isPrimitiveWrapper(obj)
             || obj instanceof String
@@ -72,14 +105,14 @@ public class StringFormatterUtils {
     }
 
     
+    /**
+     * @param t The {@link Throwable} to format
+     * @return The stack trace text - limited in depth and length, and cached
+     * for repeated identical exceptions
+     * @see StackTraceFormatter#getDefault()
+     */
     public static String formatStackTrace(Throwable t) {
-        try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            t.printStackTrace(new PrintStream(out, true, "UTF-8"));
-            return new String(out.toByteArray(), "UTF-8");   
-        } catch (UnsupportedEncodingException e) {
-            return null;
-        }
+        return StackTraceFormatter.getDefault().format(t);
     }
     
     public static Map<String, String> formatMap(Map<?, ?> map) {
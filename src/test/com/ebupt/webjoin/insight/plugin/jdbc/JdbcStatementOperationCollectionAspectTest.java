@@ -0,0 +1,261 @@
+package test.com.ebupt.webjoin.insight.plugin.jdbc;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+import com.ebupt.webjoin.insight.collection.OperationCollector;
+import com.ebupt.webjoin.insight.intercept.operation.Operation;
+import com.ebupt.webjoin.insight.plugin.jdbc.JdbcStatementOperationCollectionAspect;
+
+import junit.framework.TestCase;
+
+/**
+ * NOTE: this class (and the stub &quot;driver&quot; statement) are outside the
+ * insight packages so that both the call and the execution join points
+ * are woven
+ */
+public class JdbcStatementOperationCollectionAspectTest extends TestCase {
+	private OperationCollector orgCollector;
+	private CountingCollector collector;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		JdbcStatementOperationCollectionAspect aspect = JdbcStatementOperationCollectionAspect.aspectOf();
+		orgCollector = aspect.getCollector();
+		collector = new CountingCollector();
+		aspect.setCollector(collector);
+	}
+
+	protected void tearDown() throws Exception {
+		JdbcStatementOperationCollectionAspect.aspectOf().setCollector(orgCollector);
+		super.tearDown();
+	}
+
+	public void testSingleFramePerExecute() throws SQLException {
+		Statement stmt = new StubStatement();
+		stmt.execute("select * from dual");
+		assertEquals(1, collector.entered);
+		assertEquals(1, collector.exited);
+	}
+
+	public void testSingleFrameWhenDriverDelegates() throws SQLException {
+		Statement stmt = new StubStatement();
+		stmt.executeUpdate("delete from dual");
+		assertEquals(1, collector.entered);
+		assertEquals(1, collector.exited);
+	}
+
+	static class CountingCollector implements OperationCollector {
+		int entered, exited;
+
+		public void enter(Operation op) {
+			entered++;
+		}
+
+		public void exitNormal() {
+			exited++;
+		}
+
+		public void exitNormal(Object returnValue) {
+			exited++;
+		}
+
+		public void exitAbnormal(Throwable throwable) {
+			exited++;
+		}
+
+		public void exitAndDiscard() {
+			exited++;
+		}
+
+		public void exitAndDiscard(Object returnValue) {
+			exited++;
+		}
+	}
+
+	// a "woven driver" whose update delegates to another execute method
+	static class StubStatement implements Statement {
+		public boolean execute(String sql) {
+			return false;
+		}
+
+		public int executeUpdate(String sql) {
+			execute(sql);
+			return 0;
+		}
+
+		public ResultSet executeQuery(String sql) {
+			return null;
+		}
+
+		public int executeUpdate(String sql, int autoGeneratedKeys) {
+			return executeUpdate(sql);
+		}
+
+		public int executeUpdate(String sql, int[] columnIndexes) {
+			return executeUpdate(sql);
+		}
+
+		public int executeUpdate(String sql, String[] columnNames) {
+			return executeUpdate(sql);
+		}
+
+		public boolean execute(String sql, int autoGeneratedKeys) {
+			return execute(sql);
+		}
+
+		public boolean execute(String sql, int[] columnIndexes) {
+			return execute(sql);
+		}
+
+		public boolean execute(String sql, String[] columnNames) {
+			return execute(sql);
+		}
+
+		public int[] executeBatch() {
+			return new int[0];
+		}
+
+		public void addBatch(String sql) {
+			// ignored
+		}
+
+		public void clearBatch() {
+			// ignored
+		}
+
+		public void close() {
+			// ignored
+		}
+
+		public boolean isClosed() {
+			return false;
+		}
+
+		public void cancel() {
+			// ignored
+		}
+
+		public Connection getConnection() throws SQLException {
+			throw new SQLException("No connection");
+		}
+
+		public ResultSet getResultSet() {
+			return null;
+		}
+
+		public int getUpdateCount() {
+			return -1;
+		}
+
+		public boolean getMoreResults() {
+			return false;
+		}
+
+		public boolean getMoreResults(int current) {
+			return false;
+		}
+
+		public ResultSet getGeneratedKeys() {
+			return null;
+		}
+
+		public int getMaxFieldSize() {
+			return 0;
+		}
+
+		public void setMaxFieldSize(int max) {
+			// ignored
+		}
+
+		public int getMaxRows() {
+			return 0;
+		}
+
+		public void setMaxRows(int max) {
+			// ignored
+		}
+
+		public void setEscapeProcessing(boolean enable) {
+			// ignored
+		}
+
+		public int getQueryTimeout() {
+			return 0;
+		}
+
+		public void setQueryTimeout(int seconds) {
+			// ignored
+		}
+
+		public SQLWarning getWarnings() {
+			return null;
+		}
+
+		public void clearWarnings() {
+			// ignored
+		}
+
+		public void setCursorName(String name) {
+			// ignored
+		}
+
+		public void setFetchDirection(int direction) {
+			// ignored
+		}
+
+		public int getFetchDirection() {
+			return ResultSet.FETCH_FORWARD;
+		}
+
+		public void setFetchSize(int rows) {
+			// ignored
+		}
+
+		public int getFetchSize() {
+			return 0;
+		}
+
+		public int getResultSetConcurrency() {
+			return ResultSet.CONCUR_READ_ONLY;
+		}
+
+		public int getResultSetType() {
+			return ResultSet.TYPE_FORWARD_ONLY;
+		}
+
+		public int getResultSetHoldability() {
+			return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+		}
+
+		public void setPoolable(boolean poolable) {
+			// ignored
+		}
+
+		public boolean isPoolable() {
+			return false;
+		}
+
+		public void closeOnCompletion() {
+			// ignored
+		}
+
+		public boolean isCloseOnCompletion() {
+			return false;
+		}
+
+		public boolean isWrapperFor(Class<?> iface) {
+			return iface.isInstance(this);
+		}
+
+		public <T> T unwrap(Class<T> iface) throws SQLException {
+			if (isWrapperFor(iface)) {
+				return iface.cast(this);
+			}
+			throw new SQLException("Not a wrapper for " + iface);
+		}
+	}
+}